@@ -0,0 +1,156 @@
+package com.vaadin.framework8.migrate;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Read-only survey of a project: which classes moved to {@code com.vaadin.v7} and which declarative tags are used,
+ * how often, per Maven module and per package. Nothing is written; the files are scanned in parallel by the very
+ * {@link MigrationEngine} finders the migration uses to decide what to rewrite, so the census shows exactly what the
+ * migration would touch.
+ * <p>
+ * The module of a file is the directory of the nearest {@code pom.xml} above it, relative to the project root
+ * ({@code "."} for the root module).
+ */
+public class Census {
+    private final MigrationTool tool;
+    private MigrationEngine engine;
+    private final MavenModules modules;
+    /**
+     * module -> package -> v7 class or tag -> count.
+     */
+    private final SortedMap<String, SortedMap<String, SortedMap<String, Integer>>> usages = new TreeMap<>();
+    private int filesScanned;
+    private long scanMillis;
+
+    public Census(MigrationTool tool) {
+        this.tool = Objects.requireNonNull(tool);
+        modules = new MavenModules(tool.getProjectRoot());
+    }
+
+    /**
+     * Scans the project.
+     * @return this
+     * @throws IOException on I/O error.
+     */
+    public Census scan() throws IOException {
+        final long start = System.currentTimeMillis();
+        final List<File> files = tool.discoverFiles(new MigrationResult()).stream()
+                .filter(f -> MigrationTool.isJavaFile(f) || MigrationTool.isDeclarativeFile(f))
+                .collect(Collectors.toList());
+        engine = tool.getEngine();
+        final List<FileUsage> fileUsages;
+        try {
+            fileUsages = files.parallelStream().map(this::scanFile).collect(Collectors.toList());
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        for (FileUsage fileUsage : fileUsages) {
+            final SortedMap<String, Integer> counts = usages.computeIfAbsent(fileUsage.module, m -> new TreeMap<>())
+                    .computeIfAbsent(fileUsage.pkg, p -> new TreeMap<>());
+            fileUsage.counts.forEach((item, count) -> counts.merge(item, count, Integer::sum));
+        }
+        // packages and modules with no usages are not interesting
+        usages.values().forEach(packages -> packages.values().removeIf(Map::isEmpty));
+        usages.values().removeIf(Map::isEmpty);
+        filesScanned = files.size();
+        scanMillis = System.currentTimeMillis() - start;
+        return this;
+    }
+
+    /**
+     * The result of {@link #scan()}.
+     * @return module -> package -> v7 class name or declarative tag -> number of uses; unmodifiable, sorted.
+     */
+    public Map<String, SortedMap<String, SortedMap<String, Integer>>> getUsages() {
+        return Collections.unmodifiableMap(usages);
+    }
+
+    public void print() {
+        for (Map.Entry<String, SortedMap<String, SortedMap<String, Integer>>> module : usages.entrySet()) {
+            System.out.println("Module " + module.getKey() + ": "
+                    + module.getValue().values().stream().mapToInt(counts -> counts.values().stream().mapToInt(Integer::intValue).sum()).sum()
+                    + " uses");
+            for (Map.Entry<String, SortedMap<String, Integer>> pkg : module.getValue().entrySet()) {
+                System.out.println("  " + pkg.getKey());
+                pkg.getValue().forEach((item, count) -> System.out.println("    " + item + " " + count));
+            }
+        }
+        System.out.println("Census complete: scanned " + filesScanned + " files in " + scanMillis + " ms, "
+                + usages.size() + " modules use v7 classes");
+    }
+
+    private FileUsage scanFile(File file) {
+        try {
+            final FileUsage result;
+            if (MigrationTool.isJavaFile(file)) {
+                final String contents = tool.decodeJava(Files.readAllBytes(file.toPath()));
+                result = new FileUsage(modules.getModule(file), getJavaPackage(contents, file));
+                count(engine.findMigratedClasses(contents), result.counts);
+            } else {
+                final String contents = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+                result = new FileUsage(modules.getModule(file), getPathPackage(file));
+                count(engine.findMigratedTags(contents), result.counts);
+            }
+            return result;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static void count(List<String> items, Map<String, Integer> counts) {
+        for (String item : items) {
+            counts.merge(item, 1, Integer::sum);
+        }
+    }
+
+    private static String getJavaPackage(String contents, File file) {
+        for (String line : new JavaFile(contents).getLines()) {
+            final String trimmed = line.trim();
+            if (trimmed.startsWith("package ") && trimmed.endsWith(";")) {
+                return trimmed.substring("package ".length(), trimmed.length() - 1).trim();
+            }
+        }
+        return getPathPackage(file);
+    }
+
+    /**
+     * Derives the package from the file location, stripping the Maven source folder, e.g.
+     * {@code src/main/resources/com/example/Foo.html} is in {@code com.example}.
+     */
+    private static String getPathPackage(File file) {
+        final String path = file.getAbsoluteFile().getParent().replace(File.separatorChar, '/') + "/";
+        for (String sourceFolder : new String[]{"/src/main/java/", "/src/main/resources/", "/src/test/java/", "/src/test/resources/"}) {
+            final int index = path.lastIndexOf(sourceFolder);
+            if (index >= 0) {
+                final String pkg = path.substring(index + sourceFolder.length());
+                return pkg.isEmpty() ? "(default)" : pkg.substring(0, pkg.length() - 1).replace('/', '.');
+            }
+        }
+        return "(default)";
+    }
+
+    private static class FileUsage {
+        final String module;
+        final String pkg;
+        final Map<String, Integer> counts = new HashMap<>();
+
+        FileUsage(String module, String pkg) {
+            this.module = module;
+            this.pkg = pkg;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.vaadin.framework8.migrate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Lists the files a migration has changed, grouped by Maven module (see {@link MavenModules}), so that a build can
+ * recompile only the affected modules. Two flags tell whether the widgetset and the declarative files are affected:
+ * <ul>
+ * <li>{@code clientChanged} is set when a changed Java file refers to {@code com.vaadin.client} or to
+ * {@code com.vaadin.shared} (shared state and RPC interfaces are compiled into the widgetset too), or to their
+ * {@code com.vaadin.v7} counterparts; when the widgetset was switched to {@code com.vaadin.v7.Vaadin7WidgetSet}; or when
+ * a {@code pom.xml} changed, since its Vaadin version and client dependencies go into the widgetset. Otherwise the GWT
+ * compilation can be skipped.</li>
+ * <li>{@code declarativeChanged} is set when a declarative (html) file changed.</li>
+ * </ul>
+ * {@link #write(File)} stores the manifest as JSON:
+ * <pre>
+ * {
+ *   "clientChanged": false,
+ *   "declarativeChanged": true,
+ *   "modules": {
+ *     "web": ["web/src/main/java/com/example/MyView.java", "web/src/main/resources/com/example/MyView.html"]
+ *   }
+ * }
+ * </pre>
+ * The paths are relative to the project root, with forward slashes; the root module is {@code "."}. Thread-safe.
+ */
+public class ChangeManifest {
+    /**
+     * The packages compiled into the widgetset.
+     */
+    private static final String[] CLIENT_PACKAGES = {"com.vaadin.client", "com.vaadin.shared",
+            "com.vaadin.v7.client", "com.vaadin.v7.shared"};
+
+    private final File projectRoot;
+    private final MavenModules modules;
+    private final SortedMap<String, SortedSet<String>> changedFiles = new TreeMap<>();
+    private boolean clientChanged;
+    private boolean declarativeChanged;
+
+    /**
+     * @param projectRoot the project root of the migration, not null.
+     */
+    public ChangeManifest(File projectRoot) {
+        this.projectRoot = projectRoot.getAbsoluteFile();
+        modules = new MavenModules(projectRoot);
+    }
+
+    /**
+     * Records a changed file.
+     * @param file the changed file, not null.
+     * @param original the original contents of the file, not null.
+     */
+    synchronized void fileChanged(File file, String original) {
+        final String path = projectRoot.toPath().normalize().relativize(file.getAbsoluteFile().toPath().normalize())
+                .toString().replace(File.separatorChar, '/');
+        changedFiles.computeIfAbsent(modules.getModule(file), m -> new TreeSet<>()).add(path);
+        if (MigrationTool.isDeclarativeFile(file)) {
+            declarativeChanged = true;
+        } else if (ConfigurationMigration.isPom(file.getName()) || original.contains(ConfigurationMigration.DEFAULT_WIDGETSET)
+                || (MigrationTool.isJavaFile(file) && refersToClientPackage(original))) {
+            clientChanged = true;
+        }
+    }
+
+    private static boolean refersToClientPackage(String javaFile) {
+        for (String clientPackage : CLIENT_PACKAGES) {
+            if (javaFile.contains(clientPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return module -> project-relative paths of the changed files, both sorted. A copy.
+     */
+    public synchronized SortedMap<String, SortedSet<String>> getChangedFiles() {
+        final SortedMap<String, SortedSet<String>> copy = new TreeMap<>();
+        changedFiles.forEach((module, paths) -> copy.put(module, new TreeSet<>(paths)));
+        return copy;
+    }
+
+    public synchronized boolean isClientChanged() {
+        return clientChanged;
+    }
+
+    public synchronized boolean isDeclarativeChanged() {
+        return declarativeChanged;
+    }
+
+    /**
+     * Writes the manifest as JSON in UTF-8.
+     * @param file the file to write, not null.
+     * @throws IOException on I/O error.
+     */
+    public synchronized void write(File file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("{\n");
+            out.write("  \"clientChanged\": " + clientChanged + ",\n");
+            out.write("  \"declarativeChanged\": " + declarativeChanged + ",\n");
+            out.write("  \"modules\": {");
+            for (Iterator<Map.Entry<String, SortedSet<String>>> modules = changedFiles.entrySet().iterator(); modules.hasNext(); ) {
+                final Map.Entry<String, SortedSet<String>> module = modules.next();
+                out.write("\n    " + toJson(module.getKey()) + ": [");
+                for (Iterator<String> paths = module.getValue().iterator(); paths.hasNext(); ) {
+                    out.write(toJson(paths.next()));
+                    if (paths.hasNext()) {
+                        out.write(", ");
+                    }
+                }
+                out.write(modules.hasNext() ? "]," : "]\n  ");
+            }
+            out.write("}\n}\n");
+        }
+    }
+
+    private static String toJson(String string) {
+        final StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++) {
+            final char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
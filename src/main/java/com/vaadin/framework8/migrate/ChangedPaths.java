@@ -0,0 +1,92 @@
+package com.vaadin.framework8.migrate;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Lists the files to migrate incrementally, see {@link MigrationTool#setPaths(java.util.Collection)}: either the files
+ * changed since a git ref, or the files listed in a text file.
+ */
+public class ChangedPaths {
+    private ChangedPaths() {
+    }
+
+    /**
+     * Lists the files changed since given ref, as reported by the local git repository: the files which differ between
+     * the ref and the working tree (committed or not), plus the untracked files. Deleted files are not listed. Only runs
+     * the local {@code git} binary; nothing is fetched.
+     * @param projectRoot the project root, inside a git working tree, not null.
+     * @param ref the git ref, e.g. {@code origin/master} or a commit id, not null.
+     * @return the changed files, not null.
+     * @throws IOException if git fails, e.g. because the ref doesn't exist.
+     */
+    public static List<File> sinceGitRef(File projectRoot, String ref) throws IOException {
+        final Set<String> relativePaths = new LinkedHashSet<>();
+        relativePaths.addAll(git(projectRoot, "diff", "--name-only", "--relative", "--diff-filter=d", "-z", ref, "--"));
+        relativePaths.addAll(git(projectRoot, "ls-files", "--others", "--exclude-standard", "-z"));
+        final List<File> result = relativePaths.stream()
+                .map(path -> new File(projectRoot, path))
+                .collect(Collectors.toList());
+        System.out.println("Found " + result.size() + " files changed since " + ref);
+        return result;
+    }
+
+    /**
+     * Lists the files in given text file, one path per line, relative to the project root or absolute. Blank lines are
+     * ignored.
+     * @param projectRoot the project root, not null.
+     * @param pathsFile the text file, UTF-8, not null.
+     * @return the files, not null.
+     * @throws IOException on I/O error.
+     */
+    public static List<File> fromFile(File projectRoot, File pathsFile) throws IOException {
+        final List<File> result = new ArrayList<>();
+        for (String line : FileUtils.readLines(pathsFile, StandardCharsets.UTF_8)) {
+            final String path = line.trim();
+            if (path.isEmpty()) {
+                continue;
+            }
+            final File file = new File(path);
+            result.add(file.isAbsolute() ? file : new File(projectRoot, path));
+        }
+        return result;
+    }
+
+    private static List<String> git(File workingDir, String... args) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        final Process process = new ProcessBuilder(command)
+                .directory(workingDir)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        final String output;
+        try (InputStream in = process.getInputStream()) {
+            output = IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+        final int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + String.join(" ", command), ex);
+        }
+        if (exitCode != 0) {
+            throw new IOException(String.join(" ", command) + " failed with exit code " + exitCode);
+        }
+        return Arrays.stream(output.split("\0"))
+                .filter(path -> !path.isEmpty())
+                .collect(Collectors.toList());
+    }
+}
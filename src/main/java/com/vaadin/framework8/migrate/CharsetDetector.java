@@ -0,0 +1,195 @@
+package com.vaadin.framework8.migrate;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Detects the charset of a single file from its bytes, for projects mixing UTF-8 and legacy encodings:
+ * <ul>
+ * <li>a UTF-8, UTF-16BE or UTF-16LE byte order mark wins,</li>
+ * <li>a file with only ASCII bytes is ASCII; it is decoded and encoded as ISO-8859-1, which is a plain byte copy,</li>
+ * <li>a file which is valid UTF-8 is UTF-8,</li>
+ * <li>anything else is in the fallback charset, e.g. windows-1252.</li>
+ * </ul>
+ * The migration only ever adds ASCII characters, so writing a file back in its detected encoding (including its byte order
+ * mark) keeps every other byte intact, provided that the charset can represent every byte of the file: windows-1252 has
+ * no characters for 0x81, 0x8D, 0x8F, 0x90 and 0x9D, see {@link Encoding#roundTrips(byte[], String)}.
+ */
+public class CharsetDetector {
+    private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] UTF_16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+    private static final byte[] UTF_16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+    private final Charset fallback;
+
+    /**
+     * @param fallback the charset of files which are neither ASCII nor valid UTF-8 and have no byte order mark, not null.
+     */
+    public CharsetDetector(Charset fallback) {
+        this.fallback = Objects.requireNonNull(fallback);
+    }
+
+    /**
+     * The detected encoding of a file.
+     */
+    public static class Encoding {
+        public final Charset charset;
+        /**
+         * The byte order mark, empty if none.
+         */
+        private final byte[] bom;
+
+        Encoding(Charset charset, byte[] bom) {
+            this.charset = Objects.requireNonNull(charset);
+            this.bom = Objects.requireNonNull(bom);
+        }
+
+        /**
+         * Decodes the file contents, without the byte order mark.
+         */
+        public String decode(byte[] contents) {
+            return new String(contents, bom.length, contents.length - bom.length, charset);
+        }
+
+        /**
+         * Encodes the text as it was encoded originally, including the byte order mark.
+         */
+        public byte[] encode(String text) {
+            final byte[] encoded = text.getBytes(charset);
+            if (bom.length == 0) {
+                return encoded;
+            }
+            final byte[] result = Arrays.copyOf(bom, bom.length + encoded.length);
+            System.arraycopy(encoded, 0, result, bom.length, encoded.length);
+            return result;
+        }
+
+        /**
+         * Checks that the text decoded from given contents encodes back to the very same bytes. It doesn't if the
+         * contents contain bytes which the charset can't represent, e.g. 0x81 in windows-1252 or malformed UTF-8: those
+         * are decoded as U+FFFD and would be written back as {@code ?}.
+         * @param contents the file contents, not null.
+         * @param text the contents as returned by {@link #decode(byte[])}, not null.
+         * @return true if the file can be written back in this encoding without corrupting it.
+         */
+        public boolean roundTrips(byte[] contents, String text) {
+            return text.indexOf('\uFFFD') < 0 || Arrays.equals(encode(text), contents);
+        }
+
+        @Override
+        public String toString() {
+            return charset + (bom.length > 0 ? " with BOM" : "");
+        }
+    }
+
+    /**
+     * The encoding of all files when the charset is not detected.
+     */
+    static Encoding fixed(Charset charset) {
+        return new Encoding(charset, new byte[0]);
+    }
+
+    public Charset getFallback() {
+        return fallback;
+    }
+
+    static boolean hasUtf16Bom(byte[] contents) {
+        return startsWith(contents, UTF_16BE_BOM) || startsWith(contents, UTF_16LE_BOM);
+    }
+
+    public Encoding detect(byte[] contents) {
+        final Encoding bom = detectBom(contents);
+        if (bom != null) {
+            return bom;
+        }
+        int i = 0;
+        while (i < contents.length && contents[i] >= 0) {
+            i++;
+        }
+        if (i == contents.length) {
+            return new Encoding(StandardCharsets.ISO_8859_1, new byte[0]);
+        }
+        return new Encoding(isValidUtf8(contents, i) ? StandardCharsets.UTF_8 : fallback, new byte[0]);
+    }
+
+    /**
+     * @return the encoding given by the byte order mark, null if the file has none.
+     */
+    static Encoding detectBom(byte[] contents) {
+        if (startsWith(contents, UTF_8_BOM)) {
+            return new Encoding(StandardCharsets.UTF_8, UTF_8_BOM);
+        }
+        if (startsWith(contents, UTF_16BE_BOM)) {
+            return new Encoding(StandardCharsets.UTF_16BE, UTF_16BE_BOM);
+        }
+        if (startsWith(contents, UTF_16LE_BOM)) {
+            return new Encoding(StandardCharsets.UTF_16LE, UTF_16LE_BOM);
+        }
+        return null;
+    }
+
+    static boolean startsWith(byte[] contents, byte[] prefix) {
+        if (contents.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (contents[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that the bytes from given index on are well-formed UTF-8: no overlong forms, no surrogates, nothing above U+10FFFF.
+     */
+    static boolean isValidUtf8(byte[] contents, int from) {
+        int i = from;
+        while (i < contents.length) {
+            final int b = contents[i] & 0xFF;
+            if (b < 0x80) {
+                i++;
+                continue;
+            }
+            final int length;
+            int min = 0x80;
+            int max = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                length = 2;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                length = 3;
+                if (b == 0xE0) {
+                    min = 0xA0;
+                } else if (b == 0xED) {
+                    max = 0x9F;
+                }
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                length = 4;
+                if (b == 0xF0) {
+                    min = 0x90;
+                } else if (b == 0xF4) {
+                    max = 0x8F;
+                }
+            } else {
+                return false;
+            }
+            if (i + length > contents.length) {
+                return false;
+            }
+            final int second = contents[i + 1] & 0xFF;
+            if (second < min || second > max) {
+                return false;
+            }
+            for (int j = 2; j < length; j++) {
+                final int continuation = contents[i + j] & 0xFF;
+                if (continuation < 0x80 || continuation > 0xBF) {
+                    return false;
+                }
+            }
+            i += length;
+        }
+        return true;
+    }
+}
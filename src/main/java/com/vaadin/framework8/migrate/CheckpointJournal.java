@@ -0,0 +1,141 @@
+package com.vaadin.framework8.migrate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lists the files a migration run has completed, so that an interrupted run can be resumed with {@code -resume}
+ * instead of starting over. The {@value #FILE_NAME} file in the project root gets one project-relative path per line;
+ * it is synced at most every {@value #SYNC_INTERVAL_MILLIS} ms and once more when closed, and deleted when the run
+ * finishes.
+ * <p>
+ * A file counts as completed once it needs no more work: either it was left unchanged, or its new contents are durably
+ * on disk, see {@link OutputStage}. A path lost because the JVM died before the journal was synced just makes the
+ * resumed run migrate the file again, which doesn't change an already migrated file.
+ */
+class CheckpointJournal implements Closeable {
+    static final String FILE_NAME = ".migration-checkpoint";
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private final Path projectRoot;
+    private final Path file;
+    private final Set<String> completed;
+    private final FileChannel channel;
+    private final StringBuilder pending = new StringBuilder();
+    private long lastSync = System.nanoTime();
+    private boolean closed;
+
+    private CheckpointJournal(Path projectRoot, boolean resume) throws IOException {
+        this.projectRoot = projectRoot;
+        file = projectRoot.resolve(FILE_NAME);
+        completed = resume && Files.exists(file) ? read(file) : new HashSet<>();
+        channel = resume
+                ? FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Opens the checkpoint journal of given project.
+     * @param projectRoot the project root, not null.
+     * @param resume true to keep the paths completed by an interrupted run, false to start a new journal.
+     * @return the journal, not null. Must be closed.
+     * @throws IOException on I/O error.
+     */
+    static CheckpointJournal open(File projectRoot, boolean resume) throws IOException {
+        return new CheckpointJournal(projectRoot.toPath().toAbsolutePath().normalize(), resume);
+    }
+
+    /**
+     * Reads the completed paths. A crash may leave the last line incomplete; only lines terminated by a newline count.
+     */
+    private static Set<String> read(Path file) throws IOException {
+        final String contents = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        final Set<String> result = new HashSet<>();
+        int start = 0;
+        for (int end = contents.indexOf('\n'); end >= 0; end = contents.indexOf('\n', start)) {
+            result.add(contents.substring(start, end));
+            start = end + 1;
+        }
+        return result;
+    }
+
+    private String relativize(File f) {
+        return projectRoot.relativize(f.toPath().toAbsolutePath().normalize()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Drops the files which the interrupted run has completed.
+     * @param files the files to migrate, not null.
+     * @return the files still to migrate, in the original order, not null.
+     */
+    synchronized List<File> removeCompleted(Collection<File> files) {
+        final List<File> result = new ArrayList<>();
+        for (File f : files) {
+            if (!completed.contains(relativize(f))) {
+                result.add(f);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records that given file needs no more work. Syncs the journal if the last sync is older than {@value #SYNC_INTERVAL_MILLIS} ms.
+     * @param f the completed file, not null.
+     * @throws IOException on I/O error.
+     */
+    synchronized void complete(File f) throws IOException {
+        pending.append(relativize(f)).append('\n');
+        if (System.nanoTime() - lastSync >= TimeUnit.MILLISECONDS.toNanos(SYNC_INTERVAL_MILLIS)) {
+            sync();
+        }
+    }
+
+    private void sync() throws IOException {
+        final ByteBuffer bytes = StandardCharsets.UTF_8.encode(pending.toString());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        pending.setLength(0);
+        channel.force(false);
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Closes and deletes the journal: the run has completed all files.
+     * @throws IOException on I/O error.
+     */
+    synchronized void finish() throws IOException {
+        closed = true;
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Syncs and closes the journal, keeping it for a resumed run. Does nothing after {@link #finish()}.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+}
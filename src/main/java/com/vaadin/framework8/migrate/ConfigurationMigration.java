@@ -0,0 +1,407 @@
+package com.vaadin.framework8.migrate;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Migrates the project configuration: the Vaadin dependencies and the {@code vaadin.version} property in {@code pom.xml},
+ * and the {@code com.vaadin.DefaultWidgetSet} widgetset in {@code web.xml} and in Java annotations.
+ * <p>
+ * The XML files are parsed with StAX, which only serves to locate the element texts to change; the changes are then
+ * spliced into the original text, so that the formatting, comments and entities are preserved exactly. The files are
+ * read and written in the encoding the XML parser would use, see {@link #detectEncoding(byte[])}.
+ */
+public class ConfigurationMigration {
+    public static final String DEFAULT_WIDGETSET = "com.vaadin.DefaultWidgetSet";
+    public static final String V7_WIDGETSET = "com.vaadin.v7.Vaadin7WidgetSet";
+
+    private static final Map<String, String> DEPENDENCY_RENAMES = new HashMap<>();
+
+    static {
+        DEPENDENCY_RENAMES.put("vaadin-server", "vaadin-compatibility-server");
+        DEPENDENCY_RENAMES.put("vaadin-client-compiled", "vaadin-compatibility-client-compiled");
+    }
+
+    /**
+     * Makes the JDK's StAX report CDATA sections as such rather than as characters.
+     */
+    private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+    private static final String CDATA_START = "<![CDATA[";
+
+    /**
+     * The factory is not guaranteed to be thread-safe.
+     */
+    private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY = ThreadLocal.withInitial(() -> {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        if (factory.isPropertySupported(REPORT_CDATA)) {
+            factory.setProperty(REPORT_CDATA, true);
+        }
+        return factory;
+    });
+
+    public static boolean isPom(String fileName) {
+        return fileName.equals("pom.xml");
+    }
+
+    public static boolean isWebXml(String fileName) {
+        return fileName.equals("web.xml");
+    }
+
+    /**
+     * Detects the encoding of an XML file: the byte order mark wins, then the {@code encoding} of the XML declaration;
+     * UTF-8 if there is neither.
+     * @param xml the contents of the XML file, not null.
+     * @return the encoding, not null.
+     * @throws XMLStreamException if the XML declaration is malformed or names an unsupported encoding.
+     */
+    static CharsetDetector.Encoding detectEncoding(byte[] xml) throws XMLStreamException {
+        final CharsetDetector.Encoding bom = CharsetDetector.detectBom(xml);
+        if (bom != null) {
+            return bom;
+        }
+        final XMLStreamReader reader = XML_INPUT_FACTORY.get().createXMLStreamReader(new ByteArrayInputStream(xml));
+        final String declared = reader.getCharacterEncodingScheme();
+        reader.close();
+        if (declared == null) {
+            return CharsetDetector.fixed(StandardCharsets.UTF_8);
+        }
+        try {
+            return CharsetDetector.fixed(Charset.forName(declared));
+        } catch (IllegalArgumentException ex) {
+            throw new XMLStreamException("Unsupported encoding " + declared);
+        }
+    }
+
+    /**
+     * Changes {@code vaadin-server} to {@code vaadin-compatibility-server} and {@code vaadin-client-compiled} to
+     * {@code vaadin-compatibility-client-compiled} (unless the compatibility artifact is already listed in the same
+     * {@code <dependencies>}), and updates the {@code vaadin.version} property if it points to Vaadin 7.
+     * @param pom the contents of the {@code pom.xml} file, not null.
+     * @param vaadin8Version the target Vaadin version, not null.
+     * @return the migrated contents, not null. Equal to {@code pom} if there was nothing to migrate.
+     * @throws XMLStreamException if the file is not a well-formed XML.
+     */
+    public static String migratePom(String pom, String vaadin8Version) throws XMLStreamException {
+        Objects.requireNonNull(vaadin8Version);
+        final XmlEditor editor = new XmlEditor(pom);
+        // one entry per open <dependencies> element: the artifact IDs it lists, and the Vaadin artifactId elements to rename
+        final Deque<Set<String>> declaredArtifacts = new ArrayDeque<>();
+        final Deque<List<XmlEditor.Element>> renameCandidates = new ArrayDeque<>();
+        String groupId = null;
+        XmlEditor.Element artifactId = null;
+        XmlEditor.Element element;
+        while ((element = editor.next()) != null) {
+            final String name = element.getName();
+            if (element.isStart()) {
+                if (name.equals("dependencies")) {
+                    declaredArtifacts.push(new HashSet<>());
+                    renameCandidates.push(new ArrayList<>());
+                } else if (name.equals("dependency")) {
+                    groupId = null;
+                    artifactId = null;
+                }
+                continue;
+            }
+            if (element.isText() && element.getParent().equals("dependency")) {
+                if (name.equals("groupId")) {
+                    groupId = element.getText();
+                } else if (name.equals("artifactId")) {
+                    artifactId = element;
+                }
+            } else if (name.equals("dependency") && artifactId != null && !declaredArtifacts.isEmpty()) {
+                declaredArtifacts.peek().add(artifactId.getText());
+                if ("com.vaadin".equals(groupId) && DEPENDENCY_RENAMES.containsKey(artifactId.getText())) {
+                    renameCandidates.peek().add(artifactId);
+                }
+            } else if (name.equals("dependencies") && !declaredArtifacts.isEmpty()) {
+                final Set<String> declared = declaredArtifacts.pop();
+                for (XmlEditor.Element candidate : renameCandidates.pop()) {
+                    final String newArtifactId = DEPENDENCY_RENAMES.get(candidate.getText());
+                    if (!declared.contains(newArtifactId)) {
+                        candidate.replaceText(newArtifactId);
+                    }
+                }
+            } else if (element.isText() && name.equals("vaadin.version") && element.getParent().equals("properties")
+                    && element.getText().startsWith("7.")) {
+                element.replaceText(vaadin8Version);
+            }
+        }
+        return editor.getResult();
+    }
+
+    /**
+     * Changes the {@code widgetset} init or context parameter from {@code com.vaadin.DefaultWidgetSet}
+     * to {@code com.vaadin.v7.Vaadin7WidgetSet}.
+     * @param webXml the contents of the {@code web.xml} file, not null.
+     * @return the migrated contents, not null. Equal to {@code webXml} if there was nothing to migrate.
+     * @throws XMLStreamException if the file is not a well-formed XML.
+     */
+    public static String migrateWebXml(String webXml) throws XMLStreamException {
+        final XmlEditor editor = new XmlEditor(webXml);
+        String paramName = null;
+        XmlEditor.Element paramValue = null;
+        XmlEditor.Element element;
+        while ((element = editor.next()) != null) {
+            final String name = element.getName();
+            if (element.isStart()) {
+                if (name.equals("init-param") || name.equals("context-param")) {
+                    paramName = null;
+                    paramValue = null;
+                }
+            } else if (element.isText() && name.equals("param-name")) {
+                paramName = element.getText();
+            } else if (element.isText() && name.equals("param-value")) {
+                paramValue = element;
+            } else if ((name.equals("init-param") || name.equals("context-param")) && "widgetset".equals(paramName)
+                    && paramValue != null && paramValue.getText().equals(DEFAULT_WIDGETSET)) {
+                paramValue.replaceText(V7_WIDGETSET);
+            }
+        }
+        return editor.getResult();
+    }
+
+    /**
+     * Changes {@code "com.vaadin.DefaultWidgetSet"} string literals, typically found in {@code @Widgetset} or
+     * {@code @VaadinServletConfiguration}, to {@code "com.vaadin.v7.Vaadin7WidgetSet"}.
+     * @param javaFile the Java source, not null.
+     * @return the migrated source, not null.
+     */
+    public static String migrateWidgetsetLiterals(String javaFile) {
+        return javaFile.replace("\"" + DEFAULT_WIDGETSET + "\"", "\"" + V7_WIDGETSET + "\"");
+    }
+
+    /**
+     * Walks the XML elements and records text replacements at their exact character positions in the original text.
+     * StAX checks the well-formedness and reports the structure; since its reported character offsets are only
+     * approximate, the editor follows the markup of each event through the original text with its own cursor.
+     */
+    private static class XmlEditor {
+        private final String xml;
+        private final XMLStreamReader reader;
+        private final Deque<Element> stack = new ArrayDeque<>();
+        private final List<MigrationEngine.Edit> edits = new ArrayList<>();
+        /**
+         * Index of the first character not yet consumed by the markup of the events read so far.
+         */
+        private int cursor;
+
+        XmlEditor(String xml) throws XMLStreamException {
+            this.xml = xml;
+            reader = XML_INPUT_FACTORY.get().createXMLStreamReader(new StringReader(xml));
+            if (xml.startsWith("\uFEFF")) {
+                cursor = 1;
+            }
+            if (xml.startsWith("<?xml", cursor)) {
+                // the XML declaration is not reported as an event
+                cursor = skipPast("?>", cursor);
+            }
+        }
+
+        class Element {
+            private final String name;
+            private final String parent;
+            private final int contentStart;
+            private boolean start = true;
+            private boolean simple = true;
+            private final StringBuilder text = new StringBuilder();
+            private int textStart = -1;
+            private int textEnd = -1;
+
+            /**
+             * @param contentStart the index of the first character after the start tag, -1 if the element is empty.
+             */
+            Element(String name, String parent, int contentStart) {
+                this.name = name;
+                this.parent = parent;
+                this.contentStart = contentStart;
+            }
+
+            String getName() {
+                return name;
+            }
+
+            String getParent() {
+                return parent;
+            }
+
+            boolean isStart() {
+                return start;
+            }
+
+            boolean isEmpty() {
+                return contentStart < 0;
+            }
+
+            /**
+             * True if this is a closed element which contains only text, and the text has been located in the original file.
+             */
+            boolean isText() {
+                return !start && textStart >= 0;
+            }
+
+            String getText() {
+                return text.toString().trim();
+            }
+
+            void replaceText(String newText) {
+                if (!isText()) {
+                    throw new IllegalStateException("Element " + name + " has no replaceable text");
+                }
+                edits.add(new MigrationEngine.Edit(textStart, textEnd, newText));
+            }
+
+            void end(int contentEnd) {
+                start = false;
+                if (!simple || isEmpty()) {
+                    return;
+                }
+                final String raw = xml.substring(contentStart, contentEnd);
+                final String trimmed = raw.trim();
+                // the text is verbatim unless it contains entities; leave those alone rather than risking a corruption
+                if (trimmed.isEmpty() || trimmed.indexOf('&') >= 0 || !trimmed.equals(getText())) {
+                    return;
+                }
+                textStart = contentStart + raw.indexOf(trimmed);
+                textEnd = textStart + trimmed.length();
+            }
+        }
+
+        /**
+         * Advances to the next start or end of an element.
+         * @return the element, null at the end of the document.
+         */
+        Element next() throws XMLStreamException {
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        if (!stack.isEmpty()) {
+                            stack.peek().simple = false;
+                        }
+                        final int tagEnd = findTagEnd(nextMarkup());
+                        cursor = tagEnd + 1;
+                        final boolean empty = xml.charAt(tagEnd - 1) == '/';
+                        final Element element = new Element(reader.getLocalName(),
+                                stack.isEmpty() ? "" : stack.peek().name, empty ? -1 : cursor);
+                        stack.push(element);
+                        return element;
+                    case XMLStreamConstants.END_ELEMENT:
+                        // look for the closing tag while the element is on the stack, see nextMarkup()
+                        final int closingTag = stack.peek().isEmpty() ? -1 : nextMarkup();
+                        final Element ended = stack.pop();
+                        if (closingTag >= 0) {
+                            cursor = skipPast(">", closingTag);
+                        }
+                        ended.end(closingTag);
+                        return ended;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        if (!stack.isEmpty()) {
+                            stack.peek().text.append(reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        markComplex();
+                        cursor = skipPast("-->", nextMarkup());
+                        break;
+                    case XMLStreamConstants.CDATA:
+                        markComplex();
+                        cursor = skipPast("]]>", xml.indexOf(CDATA_START, cursor));
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        markComplex();
+                        cursor = skipPast("?>", nextMarkup());
+                        break;
+                    case XMLStreamConstants.DTD:
+                        final int doctype = nextMarkup();
+                        final int internalSubset = xml.indexOf('[', doctype);
+                        final int end = xml.indexOf('>', doctype);
+                        cursor = internalSubset >= 0 && internalSubset < end
+                                ? skipPast(">", xml.indexOf(']', internalSubset)) : end + 1;
+                        break;
+                    case XMLStreamConstants.ENTITY_REFERENCE:
+                        markComplex();
+                        break;
+                    default:
+                }
+            }
+            reader.close();
+            return null;
+        }
+
+        private void markComplex() {
+            if (!stack.isEmpty()) {
+                stack.peek().simple = false;
+            }
+        }
+
+        /**
+         * Text can not contain a raw {@code <}, therefore the next one is where the markup of the current event starts.
+         * CDATA sections are skipped in case the parser reported them as characters.
+         */
+        private int nextMarkup() throws XMLStreamException {
+            int index = xml.indexOf('<', cursor);
+            while (index >= 0 && xml.startsWith(CDATA_START, index)) {
+                markComplex();
+                index = xml.indexOf('<', skipPast("]]>", index));
+            }
+            if (index < 0) {
+                throw new XMLStreamException("Unexpected end of the document", reader.getLocation());
+            }
+            return index;
+        }
+
+        private int skipPast(String terminator, int from) throws XMLStreamException {
+            final int index = xml.indexOf(terminator, from);
+            if (index < 0) {
+                throw new XMLStreamException("Missing " + terminator, reader.getLocation());
+            }
+            return index + terminator.length();
+        }
+
+        /**
+         * Finds the {@code >} ending the tag starting at given index, skipping quoted attribute values.
+         */
+        private int findTagEnd(int tagStart) throws XMLStreamException {
+            char quote = 0;
+            for (int i = tagStart + 1; i < xml.length(); i++) {
+                final char c = xml.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return i;
+                }
+            }
+            throw new XMLStreamException("Unterminated tag", reader.getLocation());
+        }
+
+        String getResult() {
+            edits.sort(Comparator.comparingInt(edit -> edit.start));
+            return MigrationEngine.Edit.apply(xml, edits);
+        }
+    }
+}
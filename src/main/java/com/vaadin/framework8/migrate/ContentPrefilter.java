@@ -0,0 +1,79 @@
+package com.vaadin.framework8.migrate;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decides from the raw bytes of a file whether the migration could change it, without decoding the file and without
+ * the class list. Every Java rewrite starts with one of a few fixed prefixes, and every declarative tag or meta tag
+ * it rewrites contains {@code <v-}, {@code </v-} or {@code vaadin-}; a file which contains none of these is left as it
+ * is.
+ */
+class ContentPrefilter {
+    private static final byte[] JAVA_NEEDLE = ascii("com.vaadin.");
+    private static final byte[][] DECLARATIVE_NEEDLES = {ascii("<v-"), ascii("</v-"), ascii("vaadin-")};
+    /**
+     * Everything {@link MigrationEngine#migrateJava(String)} rewrites starts with one of these: a class name following
+     * {@code import }, {@code extends }, {@code implements } or {@code throws }, or the default widgetset literal.
+     */
+    private static final byte[][] JAVA_REWRITE_NEEDLES = {ascii("import com.vaadin."), ascii("extends com.vaadin."),
+            ascii("implements com.vaadin."), ascii("throws com.vaadin."), ascii("\"" + ConfigurationMigration.DEFAULT_WIDGETSET + "\"")};
+
+    private final boolean javaEnabled;
+
+    /**
+     * @param javaCharset the charset of the Java files. The Java files are only filtered if the charset encodes ASCII as
+     *                    ASCII, e.g. UTF-8 or ISO-8859-1, but not UTF-16.
+     */
+    ContentPrefilter(Charset javaCharset) {
+        javaEnabled = Arrays.equals(JAVA_NEEDLE, "com.vaadin.".getBytes(javaCharset));
+    }
+
+    private static byte[] ascii(String needle) {
+        return needle.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * False only if the source contains nothing the engine rewrites, even though it may mention {@code com.vaadin.},
+     * e.g. in its package declaration or in a fully qualified name.
+     */
+    boolean mayNeedJavaRewrite(byte[] contents) {
+        // with charset detection, a file may be UTF-16 regardless of the configured charset
+        return !javaEnabled || CharsetDetector.hasUtf16Bom(contents) || containsAny(contents, JAVA_REWRITE_NEEDLES);
+    }
+
+    /**
+     * @param contents the declarative file contents, always UTF-8.
+     */
+    boolean mayNeedDeclarativeMigration(byte[] contents) {
+        return containsAny(contents, DECLARATIVE_NEEDLES);
+    }
+
+    private static boolean containsAny(byte[] contents, byte[][] needles) {
+        for (byte[] needle : needles) {
+            if (indexOf(contents, needle) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int indexOf(byte[] haystack, byte[] needle) {
+        final byte first = needle[0];
+        final int max = haystack.length - needle.length;
+        outer:
+        for (int i = 0; i <= max; i++) {
+            if (haystack[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,169 @@
+package com.vaadin.framework8.migrate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Lists the classes of a jar by reading its central directory directly: the central directory is memory-mapped and
+ * only the entries whose names start with given prefix are decoded, so no {@link ZipEntry} is created for the
+ * thousands of other classes and resources. Zip64 jars, which Vaadin never publishes, fall back to {@link ZipFile}.
+ */
+class JarClassScanner {
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+    private static final byte[] CLASS_SUFFIX = ".class".getBytes(StandardCharsets.US_ASCII);
+
+    private JarClassScanner() {
+    }
+
+    /**
+     * Scans given jars in parallel.
+     * @param jars the jar files, not null.
+     * @param prefix the entry name prefix, e.g. "com/vaadin/v7". ASCII only.
+     * @param toClassName converts the matching entry name, e.g. "com/vaadin/v7/ui/Grid$Column.class", to the class name.
+     * @return one set of class names per jar, in the order of {@code jars}.
+     * @throws IOException on I/O error.
+     */
+    static List<Set<String>> scan(List<File> jars, String prefix, Function<String, String> toClassName) throws IOException {
+        final List<CompletableFuture<Set<String>>> futures = new ArrayList<>();
+        for (File jar : jars) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return scan(jar, prefix, toClassName);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }));
+        }
+        final List<Set<String>> result = new ArrayList<>();
+        try {
+            for (CompletableFuture<Set<String>> future : futures) {
+                result.add(future.join());
+            }
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            }
+            throw ex;
+        }
+        return result;
+    }
+
+    /**
+     * Lists the {@code .class} entries of given jar whose names start with given prefix.
+     * @param jar the jar file, not null.
+     * @param prefix the entry name prefix, e.g. "com/vaadin/v7". ASCII only.
+     * @param toClassName converts the matching entry name to the class name.
+     * @return the class names, not null.
+     * @throws IOException on I/O error, or if the file is not a zip file.
+     */
+    static Set<String> scan(File jar, String prefix, Function<String, String> toClassName) throws IOException {
+        final byte[] prefixBytes = prefix.getBytes(StandardCharsets.US_ASCII);
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long tailStart = Math.max(0, size - END_OF_CENTRAL_DIRECTORY_SIZE - MAX_COMMENT_LENGTH);
+            final ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, tailStart, size - tailStart)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            int eocd = -1;
+            for (int i = tail.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+                if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd < 0) {
+                throw new IOException(jar + " is not a zip file: no end of central directory record");
+            }
+            final int entries = tail.getShort(eocd + 10) & 0xFFFF;
+            final long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+            final long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+            if (entries == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+                return scanWithZipFile(jar, prefix, toClassName);
+            }
+            if (directoryOffset + directorySize > size) {
+                throw new IOException(jar + " is corrupt: the central directory is out of bounds");
+            }
+            final MappedByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset, directorySize);
+            directory.order(ByteOrder.LITTLE_ENDIAN);
+            return scanCentralDirectory(jar, directory, entries, prefixBytes, toClassName);
+        }
+    }
+
+    private static Set<String> scanCentralDirectory(File jar, ByteBuffer directory, int entries, byte[] prefix,
+                                                    Function<String, String> toClassName) throws IOException {
+        final Set<String> result = new HashSet<>();
+        int position = 0;
+        for (int i = 0; i < entries; i++) {
+            if (position + CENTRAL_DIRECTORY_HEADER_SIZE > directory.limit()
+                    || directory.getInt(position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+                throw new IOException(jar + " is corrupt: invalid central directory entry " + i);
+            }
+            final int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            final int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            final int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            final int name = position + CENTRAL_DIRECTORY_HEADER_SIZE;
+            if (name + nameLength > directory.limit()) {
+                throw new IOException(jar + " is corrupt: invalid central directory entry " + i);
+            }
+            if (regionMatches(directory, name, nameLength, prefix, 0)
+                    && regionMatches(directory, name, nameLength, CLASS_SUFFIX, nameLength - CLASS_SUFFIX.length)) {
+                final byte[] nameBytes = new byte[nameLength];
+                for (int j = 0; j < nameLength; j++) {
+                    nameBytes[j] = directory.get(name + j);
+                }
+                result.add(toClassName.apply(new String(nameBytes, StandardCharsets.UTF_8)));
+            }
+            position = name + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the name starting at {@code name} with given length contains {@code bytes} at {@code offset}.
+     */
+    private static boolean regionMatches(ByteBuffer buffer, int name, int nameLength, byte[] bytes, int offset) {
+        if (offset < 0 || offset + bytes.length > nameLength) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(name + offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> scanWithZipFile(File jar, String prefix, Function<String, String> toClassName) throws IOException {
+        final Set<String> result = new HashSet<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (name.startsWith(prefix) && name.endsWith(".class")) {
+                    result.add(toClassName.apply(name));
+                }
+            }
+        }
+        return result;
+    }
+}
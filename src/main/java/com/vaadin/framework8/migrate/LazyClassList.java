@@ -0,0 +1,197 @@
+package com.vaadin.framework8.migrate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.vaadin.framework8.migrate.VaadinClassList.Segment;
+
+/**
+ * Loads the {@link VaadinClassList} one {@link Segment} at a time, only when a file references the segment's packages:
+ * projects without GWT client code never resolve nor scan {@code vaadin-compatibility-client}.
+ * <p>
+ * The engine for the segments loaded so far is kept in an immutable snapshot. A file whose segments are all loaded
+ * gets the snapshot's engine without any locking; a file referencing a new segment waits for that segment and
+ * publishes a new snapshot, built from scratch, with a compare-and-set.
+ * <p>
+ * A file can only reference a segment's classes by their names, which contain the segment's package: the migrated
+ * "com.vaadin.client.*" and "com.vaadin.shared.*" classes come from {@link Segment#CLIENT} and {@link Segment#SHARED}
+ * only, so a file not mentioning those packages is migrated exactly as with the full class list.
+ * {@link Segment#SERVER} is needed by nearly every file, therefore it's loaded in the background right away.
+ */
+class LazyClassList {
+    private static final String VAADIN_PACKAGE = "com.vaadin.";
+
+    /**
+     * Loads a segment of the class list.
+     */
+    interface SegmentLoader {
+        Set<String> load(Segment segment) throws IOException;
+    }
+
+    private final String vaadin8Version;
+    private final SegmentLoader loader;
+    private final Map<Segment, CompletableFuture<Set<String>>> segments = new ConcurrentHashMap<>();
+    private final AtomicReference<Snapshot> snapshot;
+
+    /**
+     * Takes the segments of given Vaadin version from the {@link VaadinClassListRegistry}; starts loading
+     * {@link Segment#SERVER} in the background.
+     */
+    LazyClassList(String vaadin8Version) {
+        this(vaadin8Version, segment -> VaadinClassListRegistry.getSegment(segment, vaadin8Version));
+    }
+
+    LazyClassList(String vaadin8Version, SegmentLoader loader) {
+        this.vaadin8Version = vaadin8Version;
+        this.loader = loader;
+        snapshot = new AtomicReference<>(new Snapshot(EnumSet.noneOf(Segment.class),
+                VaadinClassList.of(Collections.emptyMap()), vaadin8Version));
+        segment(Segment.SERVER);
+    }
+
+    /**
+     * Wraps an already loaded class list; no segment is ever loaded.
+     */
+    LazyClassList(VaadinClassList classList, String vaadin8Version) {
+        this.vaadin8Version = vaadin8Version;
+        this.loader = segment -> classList.getClasses(segment);
+        for (Segment segment : Segment.values()) {
+            segments.put(segment, CompletableFuture.completedFuture(classList.getClasses(segment)));
+        }
+        snapshot = new AtomicReference<>(new Snapshot(EnumSet.allOf(Segment.class), classList, vaadin8Version));
+    }
+
+    /**
+     * Checks whether given segment is loaded. Never blocks, never starts loading the segment.
+     */
+    boolean isLoaded(Segment segment) {
+        final CompletableFuture<Set<String>> future = segments.get(segment);
+        return future != null && future.isDone();
+    }
+
+    /**
+     * The engine for given Java file: it knows all classes the file may reference.
+     * @param javaFile the contents of the Java file, not null.
+     * @return the engine, not null.
+     * @throws IOException if a segment failed to load.
+     */
+    MigrationEngine getJavaEngine(String javaFile) throws IOException {
+        return getEngine(getReferencedSegments(javaFile));
+    }
+
+    /**
+     * The engine for declarative files: the tags are the server UI classes.
+     */
+    MigrationEngine getDeclarativeEngine() throws IOException {
+        return getEngine(EnumSet.of(Segment.SERVER));
+    }
+
+    /**
+     * The engine knowing all segments; loads the missing ones.
+     */
+    MigrationEngine getEngine() throws IOException {
+        return getEngine(EnumSet.allOf(Segment.class));
+    }
+
+    /**
+     * The class list with all segments; loads the missing ones.
+     */
+    VaadinClassList getClassList() throws IOException {
+        getEngine();
+        return snapshot.get().classList;
+    }
+
+    /**
+     * The segments which the migrated names in given Java file may come from. Always includes {@link Segment#SERVER}.
+     */
+    static Set<Segment> getReferencedSegments(String javaFile) {
+        final Set<Segment> result = EnumSet.of(Segment.SERVER);
+        for (int i = javaFile.indexOf(VAADIN_PACKAGE); i >= 0; i = javaFile.indexOf(VAADIN_PACKAGE, i + 1)) {
+            final int pkg = i + VAADIN_PACKAGE.length();
+            if (javaFile.startsWith("client", pkg)) {
+                result.add(Segment.CLIENT);
+            } else if (javaFile.startsWith("shared", pkg)) {
+                result.add(Segment.SHARED);
+            }
+        }
+        return result;
+    }
+
+    private MigrationEngine getEngine(Set<Segment> needed) throws IOException {
+        Snapshot current = snapshot.get();
+        if (current.segments.containsAll(needed)) {
+            return current.engine;
+        }
+        for (Segment segment : needed) {
+            await(segment(segment));
+        }
+        while (true) {
+            current = snapshot.get();
+            if (current.segments.containsAll(needed)) {
+                return current.engine;
+            }
+            final Set<Segment> merged = EnumSet.copyOf(current.segments);
+            merged.addAll(needed);
+            final Map<Segment, Set<String>> classes = new EnumMap<>(Segment.class);
+            for (Segment segment : merged) {
+                classes.put(segment, segment(segment).join());
+            }
+            final Snapshot next = new Snapshot(merged, VaadinClassList.of(classes), vaadin8Version);
+            if (snapshot.compareAndSet(current, next)) {
+                return next.engine;
+            }
+        }
+    }
+
+    private CompletableFuture<Set<String>> segment(Segment segment) {
+        return segments.computeIfAbsent(segment, it -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return Collections.unmodifiableSet(loader.load(it));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, runnable -> {
+            final Thread thread = new Thread(runnable, "class-list-loader-" + it.name().toLowerCase());
+            thread.setDaemon(true);
+            thread.start();
+        }));
+    }
+
+    /**
+     * Waits for the background task to finish.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * The segments loaded so far, with the engine built from them. Never modified.
+     */
+    private static class Snapshot {
+        final Set<Segment> segments;
+        final VaadinClassList classList;
+        final MigrationEngine engine;
+
+        Snapshot(Set<Segment> segments, VaadinClassList classList, String vaadin8Version) {
+            this.segments = segments;
+            this.classList = classList;
+            this.engine = new MigrationEngine(classList, vaadin8Version);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.vaadin.framework8.migrate;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps files to their Maven module: the directory of the nearest {@code pom.xml} above the file, relative to the
+ * project root, with forward slashes; {@code "."} for the root module. The lookups are cached per directory. Thread-safe.
+ */
+class MavenModules {
+    private final File root;
+    private final Map<File, String> modules = new ConcurrentHashMap<>();
+
+    MavenModules(File projectRoot) {
+        this.root = projectRoot.getAbsoluteFile();
+    }
+
+    String getModule(File file) {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        String module = modules.get(dir);
+        if (module == null) {
+            module = findModule(dir);
+            modules.put(dir, module);
+        }
+        return module;
+    }
+
+    private String findModule(File dir) {
+        while (dir != null && !dir.equals(root) && !new File(dir, "pom.xml").exists()) {
+            dir = dir.getParentFile();
+        }
+        if (dir == null || dir.equals(root)) {
+            return ".";
+        }
+        return root.toPath().relativize(dir.toPath()).toString().replace(File.separatorChar, '/');
+    }
+}
@@ -2,27 +2,115 @@ package com.vaadin.framework8.migrate;
 
 import org.apache.commons.io.Charsets;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 
 public class Migrate {
 
     private static final String VERSION = "-version=";
     private static final String CHARSET = "-charset=";
+    private static final String SNAPSHOT = "-snapshot";
+    private static final String ROLLBACK = "-rollback";
+    private static final String SHARDS = "-shards=";
+    private static final String CENSUS = "-census";
+    private static final String SINCE = "-since=";
+    private static final String PATHS_FROM = "-paths-from=";
+    private static final String DRY_RUN = "-dry-run=";
+    private static final String CHARSET_FALLBACK = "-charset-fallback=";
+    private static final String AUTO = "auto";
+    private static final String RESUME = "-resume";
+    private static final String MANIFEST = "-manifest=";
+    private static final String JMX = "-jmx";
 
     public static void main(String[] args) throws Exception {
         String version = "8.5.2";
         Charset charset = Charsets.UTF_8;
+        boolean snapshot = false;
+        boolean resume = false;
+        String manifestFile = null;
+        boolean jmx = false;
+        int shards = 1;
+        boolean census = false;
+        String since = null;
+        String pathsFrom = null;
+        String dryRun = null;
+        boolean detectCharset = false;
+        Charset charsetFallback = Charset.forName("windows-1252");
         if (args.length > 0) {
             for (String arg : args) {
                 if (arg.startsWith(VERSION)) {
                     version = arg.substring(VERSION.length());
+                } else if (arg.startsWith(CHARSET_FALLBACK)) {
+                    charsetFallback = Charset.forName(arg.substring(CHARSET_FALLBACK.length()));
+                } else if (arg.equals(CHARSET + AUTO)) {
+                    detectCharset = true;
                 } else if (arg.startsWith(CHARSET)) {
                     charset = Charset.forName(arg.substring(CHARSET.length()));
+                } else if (arg.equals(SNAPSHOT)) {
+                    snapshot = true;
+                } else if (arg.equals(RESUME)) {
+                    resume = true;
+                } else if (arg.startsWith(MANIFEST)) {
+                    manifestFile = arg.substring(MANIFEST.length());
+                } else if (arg.equals(JMX)) {
+                    jmx = true;
+                } else if (arg.startsWith(SHARDS)) {
+                    shards = Integer.parseInt(arg.substring(SHARDS.length()));
+                } else if (arg.startsWith(SINCE)) {
+                    since = arg.substring(SINCE.length());
+                } else if (arg.startsWith(PATHS_FROM)) {
+                    pathsFrom = arg.substring(PATHS_FROM.length());
+                } else if (arg.startsWith(DRY_RUN)) {
+                    dryRun = arg.substring(DRY_RUN.length());
+                } else if (arg.equals(CENSUS)) {
+                    census = true;
+                } else if (arg.equals(ROLLBACK)) {
+                    SnapshotJournal.rollback(new File("."));
+                    return;
                 }
             }
         }
 
-        new MigrationTool(version, new File("."), charset).migrate();
+        final MigrationTool tool = new MigrationTool(version, new File("."), charset)
+                .setSnapshot(snapshot)
+                .setResume(resume)
+                .setCharsetDetection(detectCharset ? charsetFallback : null);
+        if (since != null) {
+            tool.setPaths(ChangedPaths.sinceGitRef(new File("."), since));
+        } else if (pathsFrom != null) {
+            tool.setPaths(ChangedPaths.fromFile(new File("."), new File(pathsFrom)));
+        }
+        final ChangeManifest manifest = manifestFile == null ? null : new ChangeManifest(new File("."));
+        tool.setChangeManifest(manifest);
+        if (jmx) {
+            System.out.println("Migration statistics are available over JMX as " + tool.getStats().register());
+        }
+        try {
+            if (census) {
+                new Census(tool).scan().print();
+            } else if (dryRun != null) {
+                // the diff goes into a single file, so the dry run doesn't use shards
+                try (OutputStream patch = new BufferedOutputStream(new FileOutputStream(dryRun))) {
+                    tool.setDryRun(patch).migrate();
+                }
+                System.out.println("Dry run: no files were changed, the diff is in " + dryRun);
+            } else if (shards > 1 && !resume && manifest == null) {
+                new ShardedMigration(tool, shards).migrate();
+            } else {
+                if (shards > 1) {
+                    System.out.println("The shards keep neither a checkpoint nor a manifest, migrating in a single process");
+                }
+                tool.migrate();
+            }
+            if (manifest != null && !census) {
+                manifest.write(new File(manifestFile));
+                System.out.println("The changed files are listed in " + manifestFile);
+            }
+        } finally {
+            tool.getStats().unregister();
+        }
     }
 }
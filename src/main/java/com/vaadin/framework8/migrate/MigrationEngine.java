@@ -0,0 +1,498 @@
+package com.vaadin.framework8.migrate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The rewrite rules of the migration, compiled once from a {@link VaadinClassList} and the target version, working
+ * purely in memory. Immutable and thread-safe: any number of threads may call the {@code migrate*} methods
+ * concurrently, with no per-call setup.
+ * <p>
+ * Java sources are rewritten in a single pass: every {@code import X;}, {@code extends X }, {@code implements X }
+ * and {@code throws X } is looked up in a precomputed map of class names. Declarative files are rewritten in a single
+ * pass over the {@code <v-*>} and {@code <vaadin-*>} tags. The output is identical to the original one-replace-per-class
+ * algorithm, see {@code RewriteDifferentialTest}.
+ */
+public final class MigrationEngine {
+    /**
+     * The custom renames performed on top of the com.vaadin.v7 migration, e.g. {@code PropertyId}; maps the old full class
+     * name to the new full class name.
+     */
+    public static final Map<String, String> DEFAULT_SPECIAL_RENAMES;
+
+    static {
+        final Map<String, String> renames = new LinkedHashMap<>();
+        renames.put("com.vaadin.data.fieldgroup.PropertyId",
+                "com.vaadin.annotations.PropertyId");
+        renames.put("com.vaadin.shared.ui.grid.Range",
+                "com.vaadin.shared.Range");
+        DEFAULT_SPECIAL_RENAMES = Collections.unmodifiableMap(renames);
+    }
+
+    private static final String[] JAVA_KEYWORDS = {"import ", "extends ", "implements ", "throws "};
+    private static final Pattern VAADIN_VERSION_META = Pattern.compile("<meta(.*)name=\"vaadin-version\"(.*)content=\"7.*\"(.*)>");
+
+    private final String vaadin8Version;
+    private final String versionMetaReplacement;
+    private final Map<String, String> specialRenames;
+    /**
+     * Maps a class name as it appears in the unmigrated sources, e.g. "com.vaadin.ui.Label", to the class it is
+     * migrated to, e.g. "com.vaadin.v7.ui.Label". Includes the special renames.
+     */
+    private final Map<String, String> migratedClasses = new HashMap<>();
+    private final int maxClassNameLength;
+    /**
+     * Maps a v7 star import, e.g. "com.vaadin.v7.ui.*", to the classes it matches.
+     */
+    private final Map<String, Set<String>> starImportClasses = new HashMap<>();
+    /**
+     * Declarative tag names of the moved components, e.g. "text-field".
+     */
+    private final Set<String> tagNames = new HashSet<>();
+    private final int maxTagNameLength;
+
+    public MigrationEngine(VaadinClassList classList, String vaadin8Version) {
+        this(classList, vaadin8Version, DEFAULT_SPECIAL_RENAMES);
+    }
+
+    /**
+     * @param classList the v7 classes, not null.
+     * @param vaadin8Version the target Vaadin version written into the {@code vaadin-version} meta tags, not null.
+     * @param specialRenames additional renames, old full class name to new full class name, not null. Applied unless the
+     *                       class is migrated to com.vaadin.v7 already.
+     */
+    public MigrationEngine(VaadinClassList classList, String vaadin8Version, Map<String, String> specialRenames) {
+        this.vaadin8Version = Objects.requireNonNull(vaadin8Version);
+        this.specialRenames = Collections.unmodifiableMap(new LinkedHashMap<>(specialRenames));
+        versionMetaReplacement = "<meta name=\"vaadin-version\" content=\"" + vaadin8Version + "\">";
+        for (String v7Class : classList.getAllClasses()) {
+            migratedClasses.put(v7Class.replace("com.vaadin.v7.", "com.vaadin."), v7Class);
+            // same contents and insertion order as VaadinClassList.getClassesMatchingStarImport(), so the star imports
+            // are expanded in the same order
+            starImportClasses.computeIfAbsent(v7Class.substring(0, v7Class.lastIndexOf('.')) + ".*", it -> new HashSet<>())
+                    .add(v7Class);
+        }
+        for (Map.Entry<String, String> rename : this.specialRenames.entrySet()) {
+            migratedClasses.putIfAbsent(rename.getKey(), rename.getValue());
+        }
+        maxClassNameLength = migratedClasses.keySet().stream().mapToInt(String::length).max().orElse(0);
+        for (String uiClass : classList.serverV7UIClasses) {
+            tagNames.add(classNameToElementName(VaadinClassList.getSimpleName(uiClass)));
+        }
+        maxTagNameLength = tagNames.stream().mapToInt(String::length).max().orElse(0);
+    }
+
+    public String getVaadin8Version() {
+        return vaadin8Version;
+    }
+
+    /**
+     * @return unmodifiable map of old full class name to the new full class name.
+     */
+    public Map<String, String> getSpecialRenames() {
+        return specialRenames;
+    }
+
+    /**
+     * Returns the class given class is migrated to.
+     * @param className the full class name as it appears in the unmigrated sources, e.g. "com.vaadin.ui.Label".
+     * @return the new full class name, e.g. "com.vaadin.v7.ui.Label", or null if the class is not migrated.
+     */
+    public String getMigratedClass(String className) {
+        return migratedClasses.get(className);
+    }
+
+    /**
+     * @return unmodifiable set of all class names rewritten by {@link #migrateJava(String)}, e.g. "com.vaadin.ui.Label".
+     */
+    public Set<String> getMigratedClasses() {
+        return Collections.unmodifiableSet(migratedClasses.keySet());
+    }
+
+    /**
+     * Checks whether given declarative tag name, without the {@code vaadin-} prefix, is rewritten to {@code vaadin7-}.
+     * @param tagName the tag name, e.g. "text-field".
+     * @return true if the component has been moved to the compatibility package.
+     */
+    public boolean isMigratedTag(String tagName) {
+        return tagNames.contains(tagName);
+    }
+
+    /**
+     * Migrates a Java source: class references and the default widgetset name.
+     * @param contents the Java source, not null.
+     * @return the migrated source, not null. The very same instance if there was nothing to migrate.
+     */
+    public String migrateJava(String contents) {
+        final String migrated = ConfigurationMigration.migrateWidgetsetLiterals(rewriteClassReferences(contents));
+        return migrated.equals(contents) ? contents : migrated;
+    }
+
+    /**
+     * Migrates a Java source, see {@link #migrateJava(String)}.
+     */
+    public String migrateJava(CharSequence contents) {
+        return migrateJava(contents.toString());
+    }
+
+    /**
+     * Migrates an encoded Java source, see {@link #migrateJava(String)}. The position of {@code contents} is not changed.
+     * @param contents the Java source, from its position to its limit, not null.
+     * @param charset the encoding of the source, not null.
+     * @return the migrated source, encoded in {@code charset}, not null. A duplicate of {@code contents} if there was nothing to migrate.
+     */
+    public ByteBuffer migrateJava(ByteBuffer contents, Charset charset) {
+        final String source = charset.decode(contents.duplicate()).toString();
+        final String migrated = migrateJava(source);
+        return migrated == source ? contents.duplicate() : charset.encode(migrated);
+    }
+
+    /**
+     * Migrates a declarative (html) file: moved component tags and the {@code vaadin-version} meta tag.
+     * @param contents the declarative file contents, not null.
+     * @return the migrated contents, not null. The very same instance if there was nothing to migrate.
+     */
+    public String migrateDeclarative(String contents) {
+        String html = contents;
+        if (tagNames.isEmpty()) {
+            return html;
+        }
+        if (html.contains("vaadin-version")) {
+            html = VAADIN_VERSION_META.matcher(html).replaceAll(versionMetaReplacement);
+        }
+        html = rewriteTags(html);
+        return html.equals(contents) ? contents : html;
+    }
+
+    /**
+     * Migrates a declarative file, see {@link #migrateDeclarative(String)}.
+     */
+    public String migrateDeclarative(CharSequence contents) {
+        return migrateDeclarative(contents.toString());
+    }
+
+    /**
+     * Migrates an encoded declarative file, see {@link #migrateDeclarative(String)}. The position of {@code contents} is not changed.
+     * @param contents the file contents, from its position to its limit, not null.
+     * @param charset the encoding of the file, not null.
+     * @return the migrated contents, encoded in {@code charset}, not null. A duplicate of {@code contents} if there was nothing to migrate.
+     */
+    public ByteBuffer migrateDeclarative(ByteBuffer contents, Charset charset) {
+        final String source = charset.decode(contents.duplicate()).toString();
+        final String migrated = migrateDeclarative(source);
+        return migrated == source ? contents.duplicate() : charset.encode(migrated);
+    }
+
+    /**
+     * Lists the changes {@link #migrateJava(String)} makes, as edits of the original contents.
+     * @param contents the Java source, not null.
+     * @return the edits, sorted by position and not overlapping; empty if there is nothing to migrate.
+     */
+    public List<Edit> getJavaEdits(String contents) {
+        final String migrated = migrateJava(contents);
+        if (migrated == contents) {
+            return Collections.emptyList();
+        }
+        if (contents.contains(".*;") && !expandStarImports(contents).equals(contents)) {
+            // the star import expansion rewrites lines as a whole
+            return Edit.difference(contents, migrated);
+        }
+        final List<Edit> edits = new ArrayList<>();
+        findClassReferences(contents, edits);
+        final String widgetset = "\"" + ConfigurationMigration.DEFAULT_WIDGETSET + "\"";
+        for (int i = contents.indexOf(widgetset); i >= 0; i = contents.indexOf(widgetset, i + widgetset.length())) {
+            edits.add(new Edit(i, i + widgetset.length(), "\"" + ConfigurationMigration.V7_WIDGETSET + "\""));
+        }
+        return validate(contents, edits, migrated);
+    }
+
+    /**
+     * Lists the changes {@link #migrateDeclarative(String)} makes, as edits of the original contents.
+     * @param contents the declarative file contents, not null.
+     * @return the edits, sorted by position and not overlapping; empty if there is nothing to migrate.
+     */
+    public List<Edit> getDeclarativeEdits(String contents) {
+        final String migrated = migrateDeclarative(contents);
+        if (migrated == contents) {
+            return Collections.emptyList();
+        }
+        final List<Edit> metaEdits = new ArrayList<>();
+        if (contents.contains("vaadin-version")) {
+            final Matcher matcher = VAADIN_VERSION_META.matcher(contents);
+            while (matcher.find()) {
+                metaEdits.add(new Edit(matcher.start(), matcher.end(), versionMetaReplacement));
+            }
+        }
+        final List<Edit> edits = new ArrayList<>();
+        findTags(contents, edits, null);
+        // the meta tag replacement swallows the tags on its line
+        edits.removeIf(tag -> metaEdits.stream().anyMatch(meta -> tag.start < meta.end && meta.start < tag.end));
+        edits.addAll(metaEdits);
+        return validate(contents, edits, migrated);
+    }
+
+    /**
+     * Sorts the edits and checks that they produce the migrated contents; falls back to a single edit otherwise.
+     */
+    private static List<Edit> validate(String contents, List<Edit> edits, String migrated) {
+        edits.sort(Comparator.comparingInt(edit -> edit.start));
+        for (int i = 1; i < edits.size(); i++) {
+            if (edits.get(i).start < edits.get(i - 1).end) {
+                return Edit.difference(contents, migrated);
+            }
+        }
+        return Edit.apply(contents, edits).equals(migrated) ? edits : Edit.difference(contents, migrated);
+    }
+
+    /**
+     * Rewrites the class references only, without the widgetset name.
+     */
+    String rewriteClassReferences(String contents) {
+        if (contents.contains(".*;")) {
+            contents = expandStarImports(contents);
+        }
+        final List<Edit> edits = new ArrayList<>();
+        findClassReferences(contents, edits);
+        return Edit.apply(contents, edits);
+    }
+
+    /**
+     * Finds the migrated classes the output of {@link #migrateJava(String)} refers to: the class names it rewrites, and
+     * the v7 classes the Vaadin star imports are expanded to.
+     * @param contents the Java source, not null.
+     * @return the v7 class names, once per reference.
+     */
+    List<String> findMigratedClasses(String contents) {
+        final List<String> result = new ArrayList<>();
+        if (contents.contains(".*;")) {
+            contents = expandStarImports(contents, result);
+        }
+        final List<Edit> edits = new ArrayList<>();
+        findClassReferences(contents, edits);
+        for (Edit edit : edits) {
+            result.add(edit.replacement);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the class names following {@code import }, {@code extends }, {@code implements } and {@code throws } which are
+     * migrated.
+     */
+    private void findClassReferences(String contents, List<Edit> edits) {
+        final int length = contents.length();
+        for (int i = 0; i < length; i++) {
+            final String keyword = keywordAt(contents, i);
+            if (keyword == null) {
+                continue;
+            }
+            final int start = i + keyword.length();
+            final int limit = Math.min(length, start + maxClassNameLength + 1);
+            int end = start;
+            while (end < limit && isClassNameChar(contents.charAt(end))) {
+                end++;
+            }
+            if (end == limit || contents.charAt(end) != (keyword == JAVA_KEYWORDS[0] ? ';' : ' ')) {
+                continue;
+            }
+            final String v7Class = migratedClasses.get(contents.substring(start, end));
+            if (v7Class == null) {
+                continue;
+            }
+            edits.add(new Edit(start, end, v7Class));
+            i = end;
+        }
+    }
+
+    private static String keywordAt(String contents, int index) {
+        switch (contents.charAt(index)) {
+            case 'i':
+                if (contents.startsWith(JAVA_KEYWORDS[0], index)) {
+                    return JAVA_KEYWORDS[0];
+                }
+                return contents.startsWith(JAVA_KEYWORDS[2], index) ? JAVA_KEYWORDS[2] : null;
+            case 'e':
+                return contents.startsWith(JAVA_KEYWORDS[1], index) ? JAVA_KEYWORDS[1] : null;
+            case 't':
+                return contents.startsWith(JAVA_KEYWORDS[3], index) ? JAVA_KEYWORDS[3] : null;
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isClassNameChar(char c) {
+        return c == '.' || Character.isJavaIdentifierPart(c);
+    }
+
+    private String expandStarImports(String contents) {
+        return expandStarImports(contents, null);
+    }
+
+    /**
+     * @param expanded receives the v7 classes the star imports are expanded to, may be null.
+     */
+    private String expandStarImports(String contents, List<String> expanded) {
+        final JavaFile javaFile = new JavaFile(contents);
+        for (String vaadinStarImport : javaFile.getVaadinStarImports()) {
+            final String v7StarImport = vaadinStarImport.replace("com.vaadin.", "com.vaadin.v7.");
+            for (String matchingClass : starImportClasses.getOrDefault(v7StarImport, Collections.emptySet())) {
+                if (javaFile.getContents().contains(VaadinClassList.getSimpleName(matchingClass))) {
+                    javaFile.addImportAbove(vaadinStarImport, matchingClass);
+                    if (expanded != null) {
+                        expanded.add(matchingClass);
+                    }
+                }
+            }
+            javaFile.removeImport(vaadinStarImport);
+        }
+        return javaFile.getContents();
+    }
+
+    /**
+     * Rewrites {@code <v-tag>}, {@code <v-tag }, {@code <vaadin-tag>}, {@code <vaadin-tag }, {@code </v-tag>} and
+     * {@code </vaadin-tag>} of the moved components to {@code vaadin7-tag}.
+     */
+    private String rewriteTags(String html) {
+        final List<Edit> edits = new ArrayList<>();
+        findTags(html, edits, null);
+        return Edit.apply(html, edits);
+    }
+
+    /**
+     * Finds the start tags {@link #migrateDeclarative(String)} rewrites, so that every element counts once.
+     * @param html the declarative file contents, not null.
+     * @return the tag names in the form the migration writes them, e.g. {@code vaadin7-text-field}.
+     */
+    List<String> findMigratedTags(String html) {
+        final List<String> result = new ArrayList<>();
+        findTags(html, new ArrayList<>(), result);
+        return result;
+    }
+
+    /**
+     * @param startTags receives the names of the migrated start tags, e.g. {@code vaadin7-text-field}, may be null.
+     */
+    private void findTags(String html, List<Edit> edits, List<String> startTags) {
+        final int length = html.length();
+        for (int i = html.indexOf('<'); i >= 0; i = html.indexOf('<', i + 1)) {
+            final boolean endTag = i + 1 < length && html.charAt(i + 1) == '/';
+            int start = endTag ? i + 2 : i + 1;
+            if (html.startsWith("v-", start)) {
+                start += "v-".length();
+            } else if (html.startsWith("vaadin-", start)) {
+                start += "vaadin-".length();
+            } else {
+                continue;
+            }
+            final int limit = Math.min(length, start + maxTagNameLength + 1);
+            int end = start;
+            while (end < limit && html.charAt(end) != '>' && (endTag || html.charAt(end) != ' ')) {
+                end++;
+            }
+            if (end == limit || !tagNames.contains(html.substring(start, end))) {
+                continue;
+            }
+            edits.add(new Edit(i, start, endTag ? "</vaadin7-" : "<vaadin7-"));
+            if (startTags != null && !endTag) {
+                startTags.add("vaadin7-" + html.substring(start, end));
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * Replaces the characters from {@link #start} (inclusive) to {@link #end} (exclusive) of the original contents with
+     * {@link #replacement}.
+     */
+    public static final class Edit {
+        public final int start;
+        public final int end;
+        public final String replacement;
+
+        public Edit(int start, int end, String replacement) {
+            if (start < 0 || end < start) {
+                throw new IllegalArgumentException("Invalid edit range " + start + ".." + end);
+            }
+            this.start = start;
+            this.end = end;
+            this.replacement = Objects.requireNonNull(replacement);
+        }
+
+        /**
+         * Applies given edits.
+         * @param contents the original contents, not null.
+         * @param edits sorted, not overlapping edits, not null.
+         * @return the edited contents; the very same instance if there are no edits.
+         */
+        public static String apply(String contents, List<Edit> edits) {
+            if (edits.isEmpty()) {
+                return contents;
+            }
+            final StringBuilder result = new StringBuilder(contents.length() + 64);
+            int copied = 0;
+            for (Edit edit : edits) {
+                result.append(contents, copied, edit.start).append(edit.replacement);
+                copied = edit.end;
+            }
+            return result.append(contents, copied, contents.length()).toString();
+        }
+
+        /**
+         * Computes a single edit turning {@code original} into {@code migrated}, by stripping their common prefix and suffix.
+         * @return a list with the edit, or an empty list if the contents are equal.
+         */
+        public static List<Edit> difference(String original, String migrated) {
+            if (original.equals(migrated)) {
+                return Collections.emptyList();
+            }
+            int prefix = 0;
+            final int maxPrefix = Math.min(original.length(), migrated.length());
+            while (prefix < maxPrefix && original.charAt(prefix) == migrated.charAt(prefix)) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < maxPrefix - prefix
+                    && original.charAt(original.length() - 1 - suffix) == migrated.charAt(migrated.length() - 1 - suffix)) {
+                suffix++;
+            }
+            return Collections.singletonList(new Edit(prefix, original.length() - suffix,
+                    migrated.substring(prefix, migrated.length() - suffix)));
+        }
+
+        @Override
+        public String toString() {
+            return "Edit{" + start + ".." + end + " -> '" + replacement + "'}";
+        }
+    }
+
+    /**
+     * From Design.java
+     */
+    private static String classNameToElementName(String className) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < className.length(); i++) {
+            char c = className.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) {
+                    result.append("-");
+                }
+                result.append(Character.toLowerCase(c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
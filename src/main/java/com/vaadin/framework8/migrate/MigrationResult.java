@@ -0,0 +1,115 @@
+package com.vaadin.framework8.migrate;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts of files seen and changed by a migration run. Thread-safe; results of separate runs (e.g. of the shards of
+ * a {@link ShardedMigration}) can be merged with {@link #add(MigrationResult)}.
+ */
+public class MigrationResult {
+    private final AtomicInteger javaFiles = new AtomicInteger();
+    private final AtomicInteger htmlFiles = new AtomicInteger();
+    private final AtomicInteger xmlFiles = new AtomicInteger();
+    private final AtomicInteger skippedFiles = new AtomicInteger();
+    private final AtomicInteger changedFiles = new AtomicInteger();
+
+    /**
+     * The number of Java files found, including the skipped ones.
+     */
+    public int getJavaFiles() {
+        return javaFiles.get();
+    }
+
+    /**
+     * The number of declarative (html) files found.
+     */
+    public int getHtmlFiles() {
+        return htmlFiles.get();
+    }
+
+    /**
+     * The number of {@code pom.xml} and {@code web.xml} files found.
+     */
+    public int getXmlFiles() {
+        return xmlFiles.get();
+    }
+
+    /**
+     * The number of Java files which contain nothing the migration rewrites; those were not decoded.
+     */
+    public int getSkippedFiles() {
+        return skippedFiles.get();
+    }
+
+    /**
+     * The number of files actually overwritten by the migration.
+     */
+    public int getChangedFiles() {
+        return changedFiles.get();
+    }
+
+    void javaFileFound() {
+        javaFiles.incrementAndGet();
+    }
+
+    void htmlFileFound() {
+        htmlFiles.incrementAndGet();
+    }
+
+    void xmlFileFound() {
+        xmlFiles.incrementAndGet();
+    }
+
+    void fileSkipped() {
+        skippedFiles.incrementAndGet();
+    }
+
+    void fileChanged() {
+        changedFiles.incrementAndGet();
+    }
+
+    public void add(MigrationResult other) {
+        javaFiles.addAndGet(other.getJavaFiles());
+        htmlFiles.addAndGet(other.getHtmlFiles());
+        xmlFiles.addAndGet(other.getXmlFiles());
+        skippedFiles.addAndGet(other.getSkippedFiles());
+        changedFiles.addAndGet(other.getChangedFiles());
+    }
+
+    public Properties toProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty("javaFiles", String.valueOf(getJavaFiles()));
+        properties.setProperty("htmlFiles", String.valueOf(getHtmlFiles()));
+        properties.setProperty("xmlFiles", String.valueOf(getXmlFiles()));
+        properties.setProperty("skippedFiles", String.valueOf(getSkippedFiles()));
+        properties.setProperty("changedFiles", String.valueOf(getChangedFiles()));
+        return properties;
+    }
+
+    public static MigrationResult fromProperties(Properties properties) {
+        final MigrationResult result = new MigrationResult();
+        result.javaFiles.set(Integer.parseInt(properties.getProperty("javaFiles", "0")));
+        result.htmlFiles.set(Integer.parseInt(properties.getProperty("htmlFiles", "0")));
+        result.xmlFiles.set(Integer.parseInt(properties.getProperty("xmlFiles", "0")));
+        result.skippedFiles.set(Integer.parseInt(properties.getProperty("skippedFiles", "0")));
+        result.changedFiles.set(Integer.parseInt(properties.getProperty("changedFiles", "0")));
+        return result;
+    }
+
+    public void print() {
+        System.out.println("Scanned " + getJavaFiles() + " Java files");
+        if (getSkippedFiles() > 0) {
+            System.out.println("Skipped " + getSkippedFiles() + " Java files with nothing to migrate");
+        }
+        System.out.println("Scanned " + getHtmlFiles() + " HTML files");
+        System.out.println("Scanned " + getXmlFiles() + " pom.xml and web.xml files");
+        System.out.println("Changed " + getChangedFiles() + " files");
+        System.out.println("Migration complete");
+    }
+
+    @Override
+    public String toString() {
+        return "MigrationResult" + toProperties();
+    }
+}
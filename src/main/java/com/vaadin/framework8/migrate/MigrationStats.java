@@ -0,0 +1,301 @@
+package com.vaadin.framework8.migrate;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts what a {@link MigrationTool} does while it runs: every tool keeps one, see {@link MigrationTool#getStats()}.
+ * {@link #register()} publishes it on the platform MBean server, so that jconsole or a JMX scraper can watch the
+ * throughput and spot stalls of a long migration; the {@code -jmx} parameter does that for the command line.
+ * <p>
+ * Updating the statistics costs a few atomic increments and a map update per file and phase. Sharded migrations
+ * run in separate JVMs; the coordinator's statistics only show the discovery.
+ */
+public class MigrationStats implements MigrationStatsMXBean {
+    /**
+     * The phases of migrating a file, with their latency histograms.
+     */
+    enum Phase {
+        READ("read"), MIGRATE("migrate"), WRITE("write"), COMMIT("commit");
+
+        final String caption;
+
+        Phase(String caption) {
+            this.caption = caption;
+        }
+    }
+
+    /**
+     * The upper bounds of the latency buckets, in milliseconds; the last bucket is unbounded.
+     */
+    private static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final File projectRoot;
+    private final AtomicLong filesDiscovered = new AtomicLong();
+    private final AtomicLong filesQueued = new AtomicLong();
+    private final AtomicLong filesRead = new AtomicLong();
+    private final AtomicLong filesChanged = new AtomicLong();
+    private final AtomicLong filesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong readStartNanos = new AtomicLong();
+    private final AtomicInteger readAheadQueueDepth = new AtomicInteger();
+    private final AtomicInteger writeQueueDepth = new AtomicInteger();
+    private final Map<File, InFlight> inFlight = new ConcurrentHashMap<>();
+    private final Map<Phase, AtomicLongArray> latencies = new LinkedHashMap<>();
+    private ObjectName objectName;
+
+    /**
+     * @param projectRoot the root of the migrated project, names the MBean; not null.
+     */
+    public MigrationStats(File projectRoot) {
+        this.projectRoot = projectRoot.getAbsoluteFile();
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1));
+        }
+    }
+
+    /**
+     * Registers the statistics on the platform MBean server, as
+     * {@code com.vaadin.framework8.migrate:type=MigrationStats,project="<project root>"}.
+     * @return the name of the MBean, not null.
+     * @throws JMException if the MBean can't be registered, e.g. because a migration of the same project is registered already.
+     */
+    public synchronized ObjectName register() throws JMException {
+        if (objectName == null) {
+            final ObjectName name = new ObjectName("com.vaadin.framework8.migrate:type=MigrationStats,project="
+                    + ObjectName.quote(projectRoot.toPath().normalize().toString()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        }
+        return objectName;
+    }
+
+    /**
+     * Removes the statistics from the platform MBean server. Does nothing if they are not registered.
+     * @throws JMException if the MBean can't be unregistered.
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    void fileDiscovered() {
+        filesDiscovered.incrementAndGet();
+    }
+
+    void filesQueued(int count) {
+        filesQueued.addAndGet(count);
+        readStartNanos.compareAndSet(0, System.nanoTime());
+    }
+
+    /**
+     * Marks given file as being in given phase, until {@link #end(File, Phase, long)}.
+     * @return the start of the phase, for {@link #end(File, Phase, long)}.
+     */
+    long start(File file, Phase phase) {
+        final long start = System.nanoTime();
+        inFlight.put(file, new InFlight(phase, start));
+        return start;
+    }
+
+    /**
+     * Marks given files as being in given phase together, e.g. a batch being committed, until {@link #endAll(Collection, Phase, long)}.
+     * @return the start of the phase, for {@link #endAll(Collection, Phase, long)}.
+     */
+    long startAll(Collection<File> files, Phase phase) {
+        final long start = System.nanoTime();
+        final InFlight entry = new InFlight(phase, start);
+        for (File file : files) {
+            inFlight.put(file, entry);
+        }
+        return start;
+    }
+
+    /**
+     * Records the latency of the phase started by {@link #start(File, Phase)}.
+     */
+    void end(File file, Phase phase, long start) {
+        record(phase, start);
+        removeInFlight(file, phase);
+    }
+
+    /**
+     * Records the latency of the phase started by {@link #startAll(Collection, Phase)}, once for all files.
+     */
+    void endAll(Collection<File> files, Phase phase, long start) {
+        record(phase, start);
+        for (File file : files) {
+            removeInFlight(file, phase);
+        }
+    }
+
+    private void record(Phase phase, long start) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MILLIS.length && millis > BUCKET_BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        latencies.get(phase).incrementAndGet(bucket);
+    }
+
+    private void removeInFlight(File file, Phase phase) {
+        final InFlight current = inFlight.get(file);
+        if (current != null && current.phase == phase) {
+            inFlight.remove(file, current);
+        }
+    }
+
+    void fileRead(int bytes) {
+        filesRead.incrementAndGet();
+        bytesRead.addAndGet(bytes);
+    }
+
+    void fileChanged() {
+        filesChanged.incrementAndGet();
+    }
+
+    void fileWritten(int bytes) {
+        filesWritten.incrementAndGet();
+        bytesWritten.addAndGet(bytes);
+    }
+
+    void readAheadQueueChanged(int delta) {
+        readAheadQueueDepth.addAndGet(delta);
+    }
+
+    void writeQueueChanged(int delta) {
+        writeQueueDepth.addAndGet(delta);
+    }
+
+    @Override
+    public long getFilesDiscovered() {
+        return filesDiscovered.get();
+    }
+
+    @Override
+    public long getFilesQueued() {
+        return filesQueued.get();
+    }
+
+    @Override
+    public long getFilesRead() {
+        return filesRead.get();
+    }
+
+    @Override
+    public long getFilesChanged() {
+        return filesChanged.get();
+    }
+
+    @Override
+    public long getFilesWritten() {
+        return filesWritten.get();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public double getBytesReadPerSecond() {
+        final long start = readStartNanos.get();
+        final long elapsed = System.nanoTime() - start;
+        if (start == 0 || elapsed <= 0) {
+            return 0;
+        }
+        return bytesRead.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    @Override
+    public int getReadAheadQueueDepth() {
+        return readAheadQueueDepth.get();
+    }
+
+    @Override
+    public int getWriteQueueDepth() {
+        return writeQueueDepth.get();
+    }
+
+    @Override
+    public String getSlowestInFlightFile() {
+        Map.Entry<File, InFlight> slowest = null;
+        for (Map.Entry<File, InFlight> entry : inFlight.entrySet()) {
+            if (slowest == null || entry.getValue().start - slowest.getValue().start < 0) {
+                slowest = entry;
+            }
+        }
+        if (slowest == null) {
+            return "";
+        }
+        final String path = projectRoot.toPath().normalize().relativize(slowest.getKey().getAbsoluteFile().toPath().normalize())
+                .toString().replace(File.separatorChar, '/');
+        return path + ": " + slowest.getValue().phase.caption + ", "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - slowest.getValue().start) + " ms";
+    }
+
+    @Override
+    public Map<String, Long> getReadLatencies() {
+        return getLatencies(Phase.READ);
+    }
+
+    @Override
+    public Map<String, Long> getMigrateLatencies() {
+        return getLatencies(Phase.MIGRATE);
+    }
+
+    @Override
+    public Map<String, Long> getWriteLatencies() {
+        return getLatencies(Phase.WRITE);
+    }
+
+    @Override
+    public Map<String, Long> getCommitLatencies() {
+        return getLatencies(Phase.COMMIT);
+    }
+
+    private Map<String, Long> getLatencies(Phase phase) {
+        final AtomicLongArray buckets = latencies.get(phase);
+        final Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            result.put("<= " + BUCKET_BOUNDS_MILLIS[i] + " ms", buckets.get(i));
+        }
+        result.put("> " + BUCKET_BOUNDS_MILLIS[BUCKET_BOUNDS_MILLIS.length - 1] + " ms", buckets.get(BUCKET_BOUNDS_MILLIS.length));
+        return result;
+    }
+
+    /**
+     * A file in a phase.
+     */
+    private static class InFlight {
+        final Phase phase;
+        final long start;
+
+        InFlight(Phase phase, long start) {
+            this.phase = phase;
+            this.start = start;
+        }
+    }
+}
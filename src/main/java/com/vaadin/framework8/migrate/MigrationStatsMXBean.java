@@ -0,0 +1,78 @@
+package com.vaadin.framework8.migrate;
+
+import java.util.Map;
+
+/**
+ * Live statistics of a running migration, as shown by jconsole or any JMX client; see {@link MigrationStats}.
+ * All counts start at zero when the tool is created and only grow.
+ */
+public interface MigrationStatsMXBean {
+    /**
+     * The number of files the walk has found and listed for migration.
+     */
+    long getFilesDiscovered();
+
+    /**
+     * The number of files handed over to the migration, i.e. discovered files minus those already completed by an
+     * interrupted run.
+     */
+    long getFilesQueued();
+
+    long getFilesRead();
+
+    long getFilesChanged();
+
+    /**
+     * The number of changed files whose new contents are durably on disk.
+     */
+    long getFilesWritten();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    /**
+     * The bytes read per second, since the migration started reading.
+     */
+    double getBytesReadPerSecond();
+
+    /**
+     * The number of files read ahead while the class list is being loaded, waiting to be migrated.
+     */
+    int getReadAheadQueueDepth();
+
+    /**
+     * The number of changed files handed over to the writers and not yet durably on disk: waiting for a writer, being
+     * written, or written into a temporary file and waiting for their batch to be committed.
+     */
+    int getWriteQueueDepth();
+
+    /**
+     * The file which has been in its current phase for the longest time, e.g.
+     * {@code "src/main/java/Foo.java: commit, 1200 ms"}; empty if no file is being processed. A written file waiting for
+     * its batch to fill up is not in any phase.
+     */
+    String getSlowestInFlightFile();
+
+    /**
+     * The latencies of reading a file, as upper bucket bound (e.g. {@code "<= 5 ms"}) -> number of files.
+     */
+    Map<String, Long> getReadLatencies();
+
+    /**
+     * The latencies of rewriting a file in memory, including waiting for the class list.
+     */
+    Map<String, Long> getMigrateLatencies();
+
+    /**
+     * The latencies of writing the new contents of a changed file into its temporary file, on a writer thread.
+     */
+    Map<String, Long> getWriteLatencies();
+
+    /**
+     * The latencies of committing a batch of written files: syncing their temporary files, moving them over the
+     * originals and syncing the directories. One count per batch, not per file; a written file waits at most about a
+     * second for its batch to be committed.
+     */
+    Map<String, Long> getCommitLatencies();
+}
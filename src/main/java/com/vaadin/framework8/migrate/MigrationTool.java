@@ -1,173 +1,605 @@
 package com.vaadin.framework8.migrate;
 
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
-
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
  * @author mavi
  */
 public class MigrationTool {
-    private final VaadinClassList classList;
-    private final Map<String, String> specialRenames = new HashMap<>();
+    /**
+     * While the class list is being loaded, the migration reads files ahead, up to this many bytes.
+     */
+    private static final long READ_AHEAD_LIMIT = 64 * 1024 * 1024;
+    private static final int WRITER_THREADS = 2;
+    private static final CharsetDetector.Encoding UTF_8 = CharsetDetector.fixed(StandardCharsets.UTF_8);
+    /**
+     * When this system property holds the launch time of the JVM, in milliseconds since the epoch, the time until the first
+     * file has been migrated is printed. Used by the startup benchmark.
+     */
+    static final String LAUNCHED_AT_PROPERTY = "migration.launchedAt";
+
+    private final LazyClassList classes;
+    private final MigrationStats stats;
     private final String vaadin8Version;
     private final File projectRoot;
     private final Charset charset;
+    private boolean snapshot;
+    private boolean resume;
+    private List<File> paths;
+    private OutputStream dryRun;
+    private CharsetDetector charsetDetector;
+    private ChangeManifest manifest;
+    private OutputStage output;
+    private CheckpointJournal checkpoint;
+    private boolean firstFileMigrated;
+    private long readAheadLimit = READ_AHEAD_LIMIT;
 
+    /**
+     * Creates the migration tool and starts loading the class list for given Vaadin version in the background; the
+     * migration discovers and reads files meanwhile, and only waits for the class list when it needs to rewrite a file.
+     * The shared and client parts of the class list are only loaded once a file references them, see {@link LazyClassList}.
+     */
     public MigrationTool(String vaadin8Version, File projectRoot, Charset charset) throws IOException {
+        this(new LazyClassList(vaadin8Version), vaadin8Version, projectRoot, charset);
+    }
+
+    /**
+     * Creates the migration tool with an already loaded class list, e.g. one read by {@link VaadinClassList#readSnapshot(File)}.
+     */
+    public MigrationTool(VaadinClassList classList, String vaadin8Version, File projectRoot, Charset charset) {
+        this(new LazyClassList(Objects.requireNonNull(classList), vaadin8Version), vaadin8Version, projectRoot, charset);
+    }
+
+    MigrationTool(LazyClassList classes, String vaadin8Version, File projectRoot, Charset charset) {
+        this.classes = classes;
         this.vaadin8Version = Objects.requireNonNull(vaadin8Version);
         this.projectRoot = Objects.requireNonNull(projectRoot);
         this.charset = Objects.requireNonNull(charset);
-        classList = VaadinClassList.getForVaadin(vaadin8Version);
+        stats = new MigrationStats(projectRoot);
+    }
 
-        specialRenames.put("com.vaadin.data.fieldgroup.PropertyId",
-                "com.vaadin.annotations.PropertyId");
-        specialRenames.put("com.vaadin.shared.ui.grid.Range",
-                "com.vaadin.shared.Range");
+    /**
+     * Limits the bytes read ahead while the class list is being loaded; {@value #READ_AHEAD_LIMIT} by default.
+     * @return this
+     */
+    MigrationTool setReadAheadLimit(long readAheadLimit) {
+        this.readAheadLimit = readAheadLimit;
+        return this;
     }
 
-    public void migrate() throws Exception {
-        String version = vaadin8Version;
+    /**
+     * When enabled, the original of every file is recorded in a {@link SnapshotJournal} before it is overwritten, so that
+     * the migration can be undone with {@link SnapshotJournal#rollback(File)}. Disabled by default.
+     * @param snapshot true to record the originals.
+     * @return this
+     */
+    public MigrationTool setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+        return this;
+    }
 
-        AtomicInteger javaCount = new AtomicInteger(0);
-        AtomicInteger htmlCount = new AtomicInteger(0);
-        migrateFiles(projectRoot, javaCount, htmlCount, version);
+    /**
+     * When enabled, {@link #migrate()} skips the files completed by an interrupted run, as listed in its
+     * {@link CheckpointJournal}. Disabled by default: a new run starts a new checkpoint journal.
+     * @param resume true to resume the interrupted run.
+     * @return this
+     */
+    public MigrationTool setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
 
-        System.out.println("Scanned " + javaCount.get() + " Java files");
-        System.out.println("Scanned " + htmlCount.get() + " HTML files");
-        System.out.println("Migration complete");
+    /**
+     * When set, the charset of every Java file is detected from its contents (see {@link CharsetDetector}) and the file
+     * is written back in that charset; the charset given to the constructor is not used.
+     * @param fallback the charset of files which are neither ASCII nor valid UTF-8, or null to use the constructor charset.
+     * @return this
+     */
+    public MigrationTool setCharsetDetection(Charset fallback) {
+        this.charsetDetector = fallback == null ? null : new CharsetDetector(fallback);
+        return this;
     }
 
-    private void migrateFiles(File directory, AtomicInteger javaCount,
-                                     AtomicInteger htmlCount, String version) throws IOException {
-        assert directory.isDirectory();
+    /**
+     * Restricts the migration to given files instead of walking the whole project, e.g. to the files changed since
+     * a git ref, see {@link ChangedPaths}. Files the migration does not handle and files which do not exist are ignored.
+     * @param paths the files to migrate, or null to walk the whole project.
+     * @return this
+     */
+    public MigrationTool setPaths(Collection<File> paths) {
+        this.paths = paths == null ? null : new ArrayList<>(paths);
+        return this;
+    }
 
-        for (File f : directory.listFiles()) {
-            if (f.isDirectory()) {
-                migrateFiles(f, javaCount, htmlCount, version);
-            } else if (isJavaFile(f)) {
-                javaCount.incrementAndGet();
-                migrateJava(f);
-            } else if (isDeclarativeFile(f)) {
-                htmlCount.incrementAndGet();
-                migrateDeclarative(f, version);
-            }
-        }
+    /**
+     * When set, no file is written; instead, a unified diff of every changed file is written to given stream as soon as
+     * the file is migrated. The diff applies with {@code git apply} or {@code patch -p1} in the project root.
+     * @param patch the stream to write the diff to, or null to migrate the files in place. Not closed by the tool.
+     * @return this
+     */
+    public MigrationTool setDryRun(OutputStream patch) {
+        this.dryRun = patch;
+        return this;
     }
 
-    private static boolean isJavaFile(File f) {
-        return f.getName().endsWith(".java");
+    /**
+     * When set, every changed file is recorded in given manifest; in a dry run, every file which would be changed.
+     * @param manifest the manifest, or null.
+     * @return this
+     */
+    public MigrationTool setChangeManifest(ChangeManifest manifest) {
+        this.manifest = manifest;
+        return this;
     }
 
-    private static boolean isDeclarativeFile(File f) {
-        return f.getName().endsWith(".html");
+    /**
+     * Migrates the whole project. Unless this is a dry run, the completed files are listed in a {@link CheckpointJournal}
+     * which is deleted when the migration finishes, so that an interrupted migration can be resumed, see {@link #setResume(boolean)}.
+     * @return the counts of files scanned and changed, not null.
+     */
+    public MigrationResult migrate() throws Exception {
+        final MigrationResult result = new MigrationResult();
+        final List<File> files = discoverFiles(result);
+        if (dryRun != null) {
+            migrate(files, result);
+        } else {
+            migrateWithCheckpoint(files, result);
+        }
+        result.print();
+        return result;
     }
 
-    private void migrateJava(File f) throws IOException {
-        String javaFile = IOUtils.toString(f.toURI(), charset);
-        String migratedFile = modifyJava(new JavaFile(javaFile)).getContents();
-        if (!javaFile.equals(migratedFile)) {
-            FileUtils.write(f, migratedFile, charset);
+    private void migrateWithCheckpoint(List<File> files, MigrationResult result) throws IOException {
+        try (CheckpointJournal opened = CheckpointJournal.open(projectRoot, resume)) {
+            final List<File> remaining = opened.removeCompleted(files);
+            if (remaining.size() < files.size()) {
+                System.out.println("Resuming: skipping " + (files.size() - remaining.size())
+                        + " files completed by the interrupted run");
+            }
+            if (resume) {
+                final int deleted = OutputStage.deleteStrayTempFiles(files);
+                if (deleted > 0) {
+                    System.out.println("Resuming: deleted " + deleted + " temporary files left by the interrupted run");
+                }
+            }
+            checkpoint = opened;
+            migrate(remaining, result);
+            opened.finish();
+        } finally {
+            checkpoint = null;
         }
     }
 
-    private void migrateDeclarative(File f, String version)
-            throws IOException {
-        String htmlFile = IOUtils.toString(f.toURI(), StandardCharsets.UTF_8);
-        final String migratedFile = modifyDeclarative(htmlFile, version);
-        if (!htmlFile.equals(migratedFile)) {
-            IOUtils.write(migratedFile, new FileOutputStream(f), StandardCharsets.UTF_8);
+    /**
+     * Walks the project (or takes the files given to {@link #setPaths(Collection)}) and lists all files which the migration
+     * handles: Java files, declarative files, {@code pom.xml} and {@code web.xml} files.
+     * <p>
+     * Symbolic links are followed, but every physical file is listed only once, however many paths lead to it: files
+     * and directories are identified by their file key (their real path where the file system has no file keys), and
+     * a directory seen before, e.g. a source folder linked into several modules or a link to a parent directory, is
+     * not walked again. A file which is itself a symbolic link is listed as its target, so that the migration replaces
+     * the target, not the link; a link to a file outside the project root is skipped, since the snapshot, the
+     * checkpoint, the diff and the manifest all identify files by their path within the project.
+     * @param result the found files are counted here, not null.
+     * @return the files to migrate, not null.
+     * @throws IOException on I/O error.
+     */
+    public List<File> discoverFiles(MigrationResult result) throws IOException {
+        final List<File> files = new ArrayList<>();
+        final Set<Object> visited = new HashSet<>();
+        if (paths == null) {
+            discoverFiles(projectRoot.toPath(), visited, files, result);
+        } else {
+            for (File f : paths) {
+                if (f.isFile() && !isBookkeeping(f)) {
+                    final Path path = f.toPath();
+                    if (visited.add(getFileKey(path, Files.readAttributes(path, BasicFileAttributes.class)))) {
+                        discoverFile(path, files, result);
+                    }
+                }
+            }
         }
+        return files;
     }
 
-    private JavaFile modifyJava(JavaFile javaFile) {
+    /**
+     * Checks whether given file is the migration's own: the checkpoint, or a file in the snapshot. Change listings, e.g.
+     * {@code git ls-files --others}, report these as untracked files; the walk skips them as well.
+     */
+    private boolean isBookkeeping(File f) {
+        if (f.getName().equals(CheckpointJournal.FILE_NAME)) {
+            return true;
+        }
+        final Path relative = projectRoot.toPath().toAbsolutePath().normalize().relativize(f.toPath().toAbsolutePath().normalize());
+        for (Path element : relative) {
+            if (element.toString().equals(SnapshotJournal.DIRECTORY_NAME)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // pre-process: expand star imports
-        for (String vaadinStarImport : javaFile.getVaadinStarImports()) {
-            final String v7StarImport = vaadinStarImport.replace("com.vaadin.",
-                    "com.vaadin.v7.");
-            for (String matchingClass : classList.getClassesMatchingStarImport(v7StarImport)){
-                if (javaFile.getContents().contains(VaadinClassList.getSimpleName(matchingClass))) {
-                    javaFile.addImportAbove(vaadinStarImport, matchingClass);
+    private void discoverFiles(Path root, Set<Object> visited, List<File> files, MigrationResult result) throws IOException {
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.getFileName() != null && dir.getFileName().toString().equals(SnapshotJournal.DIRECTORY_NAME)) {
+                    return FileVisitResult.SKIP_SUBTREE;
                 }
+                return visited.add(getFileKey(dir, attrs)) ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                // a dangling symbolic link is visited with the attributes of the link itself
+                if (attrs.isRegularFile() && visited.add(getFileKey(file, attrs))) {
+                    discoverFile(file, files, result);
+                }
+                return FileVisitResult.CONTINUE;
             }
-            javaFile.removeImport(vaadinStarImport);
-        }
 
-        // replace imports and everything else inside of the file with com.vaadin.v7. counterpart.
-        for (String v7Class : classList.getAllClasses()) {
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                if (exc instanceof FileSystemLoopException) {
+                    System.out.println("Skipping " + file + ": the symbolic link points to its own parent directory");
+                    return FileVisitResult.CONTINUE;
+                }
+                throw exc;
+            }
+        });
+    }
 
-            String comvaadinClass = v7Class.replace("com.vaadin.v7.",
-                    "com.vaadin.");
-            javaFile.performReplacement(comvaadinClass, v7Class);
+    /**
+     * Identifies the physical file: the file key where the file system has one (e.g. the device and inode on Unix),
+     * the real path otherwise.
+     */
+    private static Object getFileKey(Path path, BasicFileAttributes attrs) throws IOException {
+        final Object key = attrs.fileKey();
+        return key != null ? key : path.toRealPath();
+    }
+
+    /**
+     * The file to migrate for given path: the path itself, or if it's a symbolic link, the target as a path within the
+     * project root.
+     * @return the file, null if the link points outside the project root.
+     */
+    private File toTarget(Path file) throws IOException {
+        if (!Files.isSymbolicLink(file)) {
+            return file.toFile();
+        }
+        final Path target = file.toRealPath();
+        final Path realRoot = projectRoot.toPath().toRealPath();
+        if (!target.startsWith(realRoot)) {
+            System.out.println("Skipping " + file + ": the symbolic link points outside the project, to " + target);
+            return null;
         }
+        return projectRoot.toPath().resolve(realRoot.relativize(target)).toFile();
+    }
+
+    private void discovered(File f, List<File> files) {
+        files.add(f);
+        stats.fileDiscovered();
+    }
 
-        for (Map.Entry<String, String> rename : specialRenames.entrySet()) {
-            javaFile.performReplacement(rename.getKey(), rename.getValue());
+    private void discoverFile(Path path, List<File> files, MigrationResult result) throws IOException {
+        final File f = toTarget(path);
+        if (f == null) {
+            return;
         }
+        if (isJavaFile(f)) {
+            result.javaFileFound();
+            discovered(f, files);
+        } else if (isDeclarativeFile(f)) {
+            result.htmlFileFound();
+            discovered(f, files);
+        } else if (isXmlFile(f)) {
+            result.xmlFileFound();
+            discovered(f, files);
+        }
+    }
 
-        return javaFile;
+    /**
+     * Migrates given files.
+     * @param files the files to migrate, as listed by {@link #discoverFiles(MigrationResult)}.
+     * @param result the changed files are counted here, not null.
+     * @throws IOException on I/O error.
+     */
+    public void migrate(Collection<File> files, MigrationResult result) throws IOException {
+        if (dryRun != null) {
+            migrateFiles(files, result);
+        } else if (snapshot) {
+            try (SnapshotJournal journal = SnapshotJournal.open(projectRoot)) {
+                migrateFiles(files, result, journal);
+            }
+        } else {
+            migrateFiles(files, result, null);
+        }
     }
 
-    private String modifyDeclarative(String htmlFile, String version) {
-        for (String v7Class : classList.serverV7UIClasses) {
-            String simpleClassName = VaadinClassList.getSimpleName(v7Class);
-            String tagName = classNameToElementName(simpleClassName);
+    private void migrateFiles(Collection<File> files, MigrationResult result, SnapshotJournal journal) throws IOException {
+        try (OutputStage opened = new OutputStage(journal, checkpoint, stats, WRITER_THREADS)) {
+            output = opened;
+            migrateFiles(files, result);
+        } finally {
+            output = null;
+        }
+    }
 
-            String legacyStartTag = "<v-" + tagName + ">";
-            String legacyStartTag2 = "<v-" + tagName + " ";
-            String startTag = "<vaadin-" + tagName + ">";
-            String startTag2 = "<vaadin-" + tagName + " ";
-            String newStartTag = "<vaadin7-" + tagName + ">";
-            String newStartTag2 = "<vaadin7-" + tagName + " ";
-            String legacyEndTag = "</v-" + tagName + ">";
-            String endTag = "</vaadin-" + tagName + ">";
-            String newEndTag = "</vaadin7-" + tagName + ">";
+    private void migrateFiles(Collection<File> files, MigrationResult result) throws IOException {
+        final ContentPrefilter prefilter = new ContentPrefilter(charsetDetector == null ? charset : StandardCharsets.UTF_8);
+        final Iterator<File> it = files.iterator();
+        stats.filesQueued(files.size());
 
-            htmlFile = htmlFile.replace(legacyStartTag, newStartTag);
-            htmlFile = htmlFile.replace(startTag, newStartTag);
-            htmlFile = htmlFile.replace(legacyStartTag2, newStartTag2);
-            htmlFile = htmlFile.replace(startTag2, newStartTag2);
+        // the class list is still being loaded: read ahead, dropping files the migration can't change
+        final Map<File, byte[]> readAhead = new LinkedHashMap<>();
+        long readAheadBytes = 0;
+        while (!classes.isLoaded(VaadinClassList.Segment.SERVER) && readAheadBytes < readAheadLimit && it.hasNext()) {
+            final File f = it.next();
+            final byte[] contents = read(f);
+            if (mayNeedMigration(f, contents, prefilter, result)) {
+                readAhead.put(f, contents);
+                readAheadBytes += contents.length;
+                stats.readAheadQueueChanged(1);
+            } else {
+                completed(f);
+            }
+        }
 
-            htmlFile = htmlFile.replace(legacyEndTag, newEndTag);
-            htmlFile = htmlFile.replace(endTag, newEndTag);
+        for (Map.Entry<File, byte[]> entry : readAhead.entrySet()) {
+            stats.readAheadQueueChanged(-1);
+            migrateFile(entry.getKey(), entry.getValue(), result);
+        }
+        while (it.hasNext()) {
+            final File f = it.next();
+            final byte[] contents = read(f);
+            if (mayNeedMigration(f, contents, prefilter, result)) {
+                migrateFile(f, contents, result);
+            } else {
+                completed(f);
+            }
+        }
+    }
 
-            // Version
-            htmlFile = htmlFile.replaceAll(
-                    "<meta(.*)name=\"vaadin-version\"(.*)content=\"7.*\"(.*)>",
-                    "<meta name=\"vaadin-version\" content=\"" + version
-                            + "\">");
+    private byte[] read(File f) throws IOException {
+        final long start = stats.start(f, MigrationStats.Phase.READ);
+        final byte[] contents;
+        try {
+            contents = Files.readAllBytes(f.toPath());
+        } finally {
+            stats.end(f, MigrationStats.Phase.READ, start);
         }
+        stats.fileRead(contents.length);
+        return contents;
+    }
 
-        return htmlFile;
+    private CharsetDetector.Encoding getJavaEncoding(byte[] contents) {
+        return charsetDetector == null ? CharsetDetector.fixed(charset) : charsetDetector.detect(contents);
     }
 
     /**
-     * From Design.java
+     * Decodes a Java file, detecting its charset if enabled.
      */
-    private static String classNameToElementName(String className) {
-        StringBuilder result = new StringBuilder();
-        for (int i = 0; i < className.length(); i++) {
-            char c = className.charAt(i);
-            if (Character.isUpperCase(c)) {
-                if (i > 0) {
-                    result.append("-");
-                }
-                result.append(Character.toLowerCase(c));
+    String decodeJava(byte[] contents) {
+        return getJavaEncoding(contents).decode(contents);
+    }
+
+    /**
+     * Checks the raw bytes of a file, see {@link ContentPrefilter}; counts the Java files skipped.
+     */
+    private static boolean mayNeedMigration(File f, byte[] contents, ContentPrefilter prefilter, MigrationResult result) {
+        if (isJavaFile(f)) {
+            if (prefilter.mayNeedJavaRewrite(contents)) {
+                return true;
+            }
+            result.fileSkipped();
+            return false;
+        } else if (isDeclarativeFile(f)) {
+            return prefilter.mayNeedDeclarativeMigration(contents);
+        }
+        return true;
+    }
+
+    private void migrateFile(File f, byte[] contents, MigrationResult result) throws IOException {
+        final boolean changed;
+        final long start = stats.start(f, MigrationStats.Phase.MIGRATE);
+        try {
+            if (isJavaFile(f)) {
+                final CharsetDetector.Encoding encoding = getJavaEncoding(contents);
+                final String javaFile = decode(f, contents, encoding);
+                changed = javaFile != null && migrateJava(f, javaFile, classes.getJavaEngine(javaFile), encoding);
+            } else if (isDeclarativeFile(f)) {
+                final String htmlFile = decode(f, contents, UTF_8);
+                changed = htmlFile != null && migrateDeclarative(f, htmlFile, classes.getDeclarativeEngine());
             } else {
-                result.append(c);
+                changed = migrateXml(f, contents, vaadin8Version);
             }
+        } finally {
+            stats.end(f, MigrationStats.Phase.MIGRATE, start);
+        }
+        if (changed) {
+            result.fileChanged();
+            stats.fileChanged();
+        } else {
+            completed(f);
+        }
+        if (!firstFileMigrated) {
+            firstFileMigrated = true;
+            printTimeToFirstFile();
         }
-        return result.toString();
     }
 
+    /**
+     * Decodes a file which is going to be migrated.
+     * @return the contents, or null if writing the contents back would corrupt the file, see
+     * {@link CharsetDetector.Encoding#roundTrips(byte[], String)}; the file is reported then.
+     */
+    private static String decode(File f, byte[] contents, CharsetDetector.Encoding encoding) {
+        final String text = encoding.decode(contents);
+        if (!encoding.roundTrips(contents, text)) {
+            System.out.println("Skipping " + f + ": it contains bytes which are not valid " + encoding.charset
+                    + " and would be corrupted when written back");
+            return null;
+        }
+        return text;
+    }
+
+    private static void printTimeToFirstFile() {
+        final Long launchedAt = Long.getLong(LAUNCHED_AT_PROPERTY);
+        if (launchedAt != null) {
+            System.out.println("Time to first file: " + (System.currentTimeMillis() - launchedAt) + " ms");
+        }
+    }
+
+    /**
+     * Records a file which needs no writing in the checkpoint; written files are recorded by the {@link OutputStage}.
+     */
+    private void completed(File f) throws IOException {
+        if (checkpoint != null) {
+            checkpoint.complete(f);
+        }
+    }
+
+    /**
+     * The in-memory rewrite engine used by this tool, knowing the whole class list. Waits for the class list to be loaded.
+     * @return the engine, not null.
+     * @throws IOException if the class list failed to load.
+     */
+    public MigrationEngine getEngine() throws IOException {
+        return classes.getEngine();
+    }
+
+    /**
+     * The live statistics of this tool, see {@link MigrationStats#register()}.
+     * @return the statistics, not null.
+     */
+    public MigrationStats getStats() {
+        return stats;
+    }
+
+    VaadinClassList getClassList() throws IOException {
+        return classes.getClassList();
+    }
+
+    String getVaadin8Version() {
+        return vaadin8Version;
+    }
+
+    File getProjectRoot() {
+        return projectRoot;
+    }
+
+    Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return the fallback charset if the charset detection is enabled, null otherwise.
+     */
+    Charset getCharsetFallback() {
+        return charsetDetector == null ? null : charsetDetector.getFallback();
+    }
+
+    boolean isSnapshot() {
+        return snapshot;
+    }
+
+    static boolean isJavaFile(File f) {
+        return f.getName().endsWith(".java");
+    }
+
+    static boolean isDeclarativeFile(File f) {
+        return f.getName().endsWith(".html");
+    }
+
+    private static boolean isXmlFile(File f) {
+        return ConfigurationMigration.isPom(f.getName()) || ConfigurationMigration.isWebXml(f.getName());
+    }
+
+    private boolean migrateJava(File f, String javaFile, MigrationEngine engine, CharsetDetector.Encoding encoding) throws IOException {
+        String migratedFile = engine.migrateJava(javaFile);
+        if (!javaFile.equals(migratedFile)) {
+            write(f, javaFile, migratedFile, encoding, engine::getJavaEdits);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean migrateDeclarative(File f, String htmlFile, MigrationEngine engine) throws IOException {
+        final String migratedFile = engine.migrateDeclarative(htmlFile);
+        if (!htmlFile.equals(migratedFile)) {
+            write(f, htmlFile, migratedFile, UTF_8, engine::getDeclarativeEdits);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean migrateXml(File f, byte[] contents, String version) throws IOException {
+        final CharsetDetector.Encoding encoding;
+        final String xmlFile;
+        final String migratedFile;
+        try {
+            encoding = ConfigurationMigration.detectEncoding(contents);
+            xmlFile = decode(f, contents, encoding);
+            if (xmlFile == null) {
+                return false;
+            }
+            migratedFile = ConfigurationMigration.isPom(f.getName())
+                    ? ConfigurationMigration.migratePom(xmlFile, version)
+                    : ConfigurationMigration.migrateWebXml(xmlFile);
+        } catch (XMLStreamException ex) {
+            System.out.println("Skipping " + f + ": " + ex.getMessage());
+            return false;
+        }
+        if (!xmlFile.equals(migratedFile)) {
+            write(f, xmlFile, migratedFile, encoding, it -> MigrationEngine.Edit.difference(it, migratedFile));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Hands the migrated contents over to the {@link OutputStage}, or in a dry run, writes the diff of the changes.
+     * @param edits computes the edits of the original contents, only called in a dry run.
+     */
+    private void write(File f, String original, String contents, CharsetDetector.Encoding encoding,
+                       Function<String, List<MigrationEngine.Edit>> edits) throws IOException {
+        if (manifest != null) {
+            manifest.fileChanged(f, original);
+        }
+        if (dryRun != null) {
+            final String relativePath = projectRoot.getAbsoluteFile().toPath().normalize()
+                    .relativize(f.getAbsoluteFile().toPath().normalize()).toString().replace(File.separatorChar, '/');
+            // the diff is in the encoding of the file, as git does it
+            final byte[] diff = UnifiedDiff.format(relativePath, original, edits.apply(original)).getBytes(encoding.charset);
+            synchronized (dryRun) {
+                dryRun.write(diff);
+                dryRun.flush();
+            }
+        } else {
+            output.submit(f, encoding.encode(contents));
+        }
+    }
 }
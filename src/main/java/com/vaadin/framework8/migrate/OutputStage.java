@@ -0,0 +1,346 @@
+package com.vaadin.framework8.migrate;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the migrated files on dedicated writer threads, so that the migration never waits for the disk.
+ * <p>
+ * A file is never overwritten in place: the new contents go into a sibling temporary file with the permissions of the
+ * original, which then atomically replaces the original. A crash or Ctrl-C therefore leaves every file either
+ * untouched or completely migrated, at worst with a stray {@code .tmp} file next to it, which a resumed run deletes, see
+ * {@link #deleteStrayTempFiles(Collection)}. The temporary files are synced in batches of {@value #SYNC_BATCH}: all
+ * temporary files of the batch are synced, then renamed, then their directories are synced, so that a batch costs a
+ * handful of disk flushes instead of three per file. A batch which has not filled up within
+ * {@value #FLUSH_INTERVAL_MILLIS} ms is committed anyway, so that small projects and the tail of a run don't keep
+ * their migrated files in temporary files until the stage is closed.
+ * <p>
+ * When a {@link SnapshotJournal} is given, the original of every file is recorded just before it is replaced. When a
+ * {@link CheckpointJournal} is given, every file is recorded as completed once its directory has been synced. The
+ * {@link MigrationStats} count the files waiting to be written; the time to write each temporary file and the time to
+ * commit each batch are measured separately.
+ */
+class OutputStage implements Closeable {
+    static final int SYNC_BATCH = 256;
+    static final long FLUSH_INTERVAL_MILLIS = 1000;
+    /**
+     * The most bytes waiting to be written; {@link #submit(File, byte[])} blocks when there are more.
+     */
+    private static final int MAX_PENDING_BYTES = 64 * 1024 * 1024;
+    /**
+     * The name of a temporary file created by {@link #write(Path, byte[])}; the group is the name of the original.
+     */
+    private static final Pattern TEMP_FILE_NAME = Pattern.compile("\\.(.*\\D)\\d+\\.tmp");
+
+    private final SnapshotJournal journal;
+    private final CheckpointJournal checkpoint;
+    private final MigrationStats stats;
+    private final ExecutorService writers;
+    private final ScheduledExecutorService flusher;
+    private final Semaphore pendingBytes = new Semaphore(MAX_PENDING_BYTES);
+    private final List<Pending> batch = new ArrayList<>();
+    private final AtomicInteger written = new AtomicInteger();
+    private IOException failure;
+
+    /**
+     * @param journal records the originals, may be null.
+     * @param checkpoint records the durably replaced files, may be null.
+     * @param stats counts the written files, not null.
+     * @param threads the number of writer threads, 1 or more.
+     */
+    OutputStage(SnapshotJournal journal, CheckpointJournal checkpoint, MigrationStats stats, int threads) {
+        this.journal = journal;
+        this.checkpoint = checkpoint;
+        this.stats = stats;
+        final AtomicInteger counter = new AtomicInteger();
+        writers = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "output-writer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "output-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushIfDue, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deletes the temporary files which an interrupted run left next to given files.
+     * @param files the files of the project, not null.
+     * @return the number of files deleted.
+     * @throws IOException on I/O error.
+     */
+    static int deleteStrayTempFiles(Collection<File> files) throws IOException {
+        final Map<Path, Set<String>> namesByDirectory = new HashMap<>();
+        for (File f : files) {
+            final Path file = f.toPath().toAbsolutePath();
+            namesByDirectory.computeIfAbsent(file.getParent(), it -> new HashSet<>()).add(file.getFileName().toString());
+        }
+        int deleted = 0;
+        for (Map.Entry<Path, Set<String>> directory : namesByDirectory.entrySet()) {
+            try (DirectoryStream<Path> temps = Files.newDirectoryStream(directory.getKey(), ".*.tmp")) {
+                for (Path temp : temps) {
+                    final Matcher matcher = TEMP_FILE_NAME.matcher(temp.getFileName().toString());
+                    if (matcher.matches() && directory.getValue().contains(matcher.group(1)) && Files.deleteIfExists(temp)) {
+                        deleted++;
+                    }
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Schedules the file to be replaced with given contents. Returns immediately, unless too many bytes are waiting to be written.
+     * @param file the file to replace, not null.
+     * @param contents the new contents, not null. Must not be modified afterwards.
+     * @throws IOException if a previous write failed.
+     */
+    void submit(File file, byte[] contents) throws IOException {
+        checkFailure();
+        final int permits = Math.min(contents.length, MAX_PENDING_BYTES);
+        try {
+            pendingBytes.acquire(permits);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the writers");
+        }
+        stats.writeQueueChanged(1);
+        writers.execute(() -> {
+            try {
+                write(file.toPath(), contents);
+            } catch (IOException | RuntimeException ex) {
+                fail(ex instanceof IOException ? (IOException) ex : new IOException("Failed to write " + file, ex));
+            } finally {
+                pendingBytes.release(permits);
+            }
+        });
+    }
+
+    /**
+     * The number of files replaced so far.
+     */
+    int getWrittenFiles() {
+        return written.get();
+    }
+
+    private void write(Path file, byte[] contents) throws IOException {
+        final long start = stats.start(file.toFile(), MigrationStats.Phase.WRITE);
+        final Path temp;
+        try {
+            temp = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".tmp");
+            try {
+                Files.write(temp, contents);
+                try {
+                    Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+                } catch (UnsupportedOperationException ex) {
+                    // not a POSIX file system; the temp file has the default permissions
+                }
+            } catch (IOException | RuntimeException ex) {
+                Files.deleteIfExists(temp);
+                throw ex;
+            }
+        } catch (IOException | RuntimeException ex) {
+            stats.writeQueueChanged(-1);
+            throw ex;
+        } finally {
+            stats.end(file.toFile(), MigrationStats.Phase.WRITE, start);
+        }
+        final List<Pending> full;
+        synchronized (batch) {
+            batch.add(new Pending(file, temp, contents.length));
+            if (batch.size() < SYNC_BATCH) {
+                return;
+            }
+            full = new ArrayList<>(batch);
+            batch.clear();
+        }
+        commit(full);
+    }
+
+    /**
+     * Commits the batch if its oldest file has waited for {@value #FLUSH_INTERVAL_MILLIS} ms or more.
+     */
+    private void flushIfDue() {
+        final List<Pending> due;
+        synchronized (batch) {
+            if (batch.isEmpty() || System.nanoTime() - batch.get(0).written < TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS)) {
+                return;
+            }
+            due = new ArrayList<>(batch);
+            batch.clear();
+        }
+        try {
+            commit(due);
+        } catch (IOException | RuntimeException ex) {
+            fail(ex instanceof IOException ? (IOException) ex : new IOException("Failed to commit the written files", ex));
+        }
+    }
+
+    /**
+     * Syncs the temporary files, moves them over the originals and syncs their directories, then records the files in
+     * the checkpoint.
+     */
+    private void commit(List<Pending> pending) throws IOException {
+        final List<File> files = new ArrayList<>(pending.size());
+        for (Pending p : pending) {
+            files.add(p.file.toFile());
+        }
+        final long start = stats.startAll(files, MigrationStats.Phase.COMMIT);
+        IOException firstFailure = null;
+        for (Pending p : pending) {
+            try (FileChannel channel = FileChannel.open(p.temp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (IOException ex) {
+                firstFailure = firstFailure == null ? ex : firstFailure;
+            }
+        }
+        final Set<Path> directories = new LinkedHashSet<>();
+        final List<Pending> moved = new ArrayList<>();
+        for (Pending p : pending) {
+            try {
+                if (firstFailure == null) {
+                    if (journal != null) {
+                        journal.recordOriginal(p.file.toFile());
+                    }
+                    move(p.temp, p.file);
+                    directories.add(p.temp.getParent());
+                    moved.add(p);
+                    written.incrementAndGet();
+                }
+            } catch (IOException ex) {
+                firstFailure = ex;
+            }
+            try {
+                Files.deleteIfExists(p.temp);
+            } catch (IOException ex) {
+                // reported after the bookkeeping of the files already moved
+                firstFailure = firstFailure == null ? ex : firstFailure;
+            }
+        }
+        for (Path directory : directories) {
+            syncDirectory(directory);
+        }
+        for (Pending p : moved) {
+            stats.fileWritten(p.bytes);
+        }
+        if (!pending.isEmpty()) {
+            stats.endAll(files, MigrationStats.Phase.COMMIT, start);
+        }
+        stats.writeQueueChanged(-pending.size());
+        if (checkpoint != null) {
+            for (Pending p : moved) {
+                checkpoint.complete(p.file.toFile());
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+
+    private static void move(Path temp, Path file) throws IOException {
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // directories can't be opened on Windows; the rename is durable there once the file is
+        }
+    }
+
+    private synchronized void fail(IOException ex) {
+        if (failure == null) {
+            failure = ex;
+        } else {
+            failure.addSuppressed(ex);
+        }
+    }
+
+    private synchronized void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits for all scheduled writes and commits the last batch.
+     * @throws IOException if any write failed.
+     */
+    @Override
+    public void close() throws IOException {
+        writers.shutdown();
+        try {
+            while (!writers.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("Waiting for the writers to finish...");
+            }
+            flusher.shutdown();
+            flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the writers");
+        }
+        final List<Pending> last;
+        synchronized (batch) {
+            last = new ArrayList<>(batch);
+            batch.clear();
+        }
+        try {
+            commit(last);
+        } catch (IOException ex) {
+            fail(ex);
+        }
+        checkFailure();
+    }
+
+    /**
+     * A written temporary file, waiting to be synced and moved over the original.
+     */
+    private static class Pending {
+        final Path file;
+        final Path temp;
+        final int bytes;
+        /**
+         * When the temporary file was written, in {@link System#nanoTime()}.
+         */
+        final long written = System.nanoTime();
+
+        Pending(Path file, Path temp, int bytes) {
+            this.file = file;
+            this.temp = temp;
+            this.bytes = bytes;
+        }
+    }
+}
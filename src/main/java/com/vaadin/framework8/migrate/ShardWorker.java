@@ -0,0 +1,56 @@
+package com.vaadin.framework8.migrate;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * The worker JVM of a {@link ShardedMigration}. Takes a single argument: the job file, a properties file listing
+ * the class list snapshot, the files of the shard and where to write the report to.
+ */
+public class ShardWorker {
+    static final String PROJECT_ROOT = "projectRoot";
+    static final String VERSION = "version";
+    static final String CHARSET = "charset";
+    static final String CHARSET_FALLBACK = "charsetFallback";
+    static final String SNAPSHOT = "snapshot";
+    static final String CLASS_LIST = "classList";
+    static final String FILES = "files";
+    static final String REPORT = "report";
+
+    public static void main(String[] args) {
+        try {
+            final Properties job = new Properties();
+            try (InputStream in = new FileInputStream(args[0])) {
+                job.load(in);
+            }
+            final VaadinClassList classList = VaadinClassList.readSnapshot(new File(job.getProperty(CLASS_LIST)));
+            final MigrationTool tool = new MigrationTool(classList, job.getProperty(VERSION),
+                    new File(job.getProperty(PROJECT_ROOT)), Charset.forName(job.getProperty(CHARSET)))
+                    .setSnapshot(Boolean.parseBoolean(job.getProperty(SNAPSHOT)));
+            if (job.getProperty(CHARSET_FALLBACK) != null) {
+                tool.setCharsetDetection(Charset.forName(job.getProperty(CHARSET_FALLBACK)));
+            }
+            final List<File> files = FileUtils.readLines(new File(job.getProperty(FILES)), StandardCharsets.UTF_8).stream()
+                    .map(File::new)
+                    .collect(Collectors.toList());
+            final MigrationResult result = new MigrationResult();
+            tool.migrate(files, result);
+            try (OutputStream out = new FileOutputStream(job.getProperty(REPORT))) {
+                result.toProperties().store(out, null);
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
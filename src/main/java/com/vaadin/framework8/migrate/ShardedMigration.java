@@ -0,0 +1,141 @@
+package com.vaadin.framework8.migrate;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+/**
+ * Migrates a very large project with several local worker JVMs, so that a single JVM's heap and GC are not the limit.
+ * The coordinator discovers the files, partitions them into shards by the hash of the project-relative path, stores
+ * the class list into a snapshot file (see {@link VaadinClassList#writeSnapshot(File)}) and launches one
+ * {@link ShardWorker} per shard. The workers load the snapshot instead of resolving and scanning the Vaadin jars,
+ * migrate their shard and report their counts back; the coordinator merges them into a single {@link MigrationResult}.
+ */
+public class ShardedMigration {
+    private final MigrationTool tool;
+    private final int shards;
+
+    public ShardedMigration(MigrationTool tool, int shards) {
+        this.tool = Objects.requireNonNull(tool);
+        if (shards < 1) {
+            throw new IllegalArgumentException("Parameter shards: invalid value " + shards + ": must be 1 or more");
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Returns the shard of given file.
+     * @param relativePath the path relative to the project root, with forward slashes.
+     * @param shards the number of shards, 1 or more.
+     * @return the shard index, 0..shards-1.
+     */
+    static int shardOf(String relativePath, int shards) {
+        return Math.floorMod(relativePath.hashCode(), shards);
+    }
+
+    private List<List<File>> partition(List<File> files) {
+        final Path root = tool.getProjectRoot().toPath().toAbsolutePath().normalize();
+        final List<List<File>> result = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            result.add(new ArrayList<>());
+        }
+        for (File file : files) {
+            final String relativePath = root.relativize(file.toPath().toAbsolutePath().normalize()).toString()
+                    .replace(File.separatorChar, '/');
+            result.get(shardOf(relativePath, shards)).add(file);
+        }
+        return result;
+    }
+
+    public MigrationResult migrate() throws IOException, InterruptedException {
+        final MigrationResult result = new MigrationResult();
+        final List<List<File>> partitions = partition(tool.discoverFiles(result));
+        final Path workDir = Files.createTempDirectory("migration-shards");
+        try {
+            final File classListSnapshot = workDir.resolve("classlist.bin").toFile();
+            tool.getClassList().writeSnapshot(classListSnapshot);
+
+            final List<Process> workers = new ArrayList<>();
+            final List<File> reports = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                final List<File> shard = partitions.get(i);
+                final File report = workDir.resolve("shard-" + i + ".report").toFile();
+                reports.add(report);
+                if (shard.isEmpty()) {
+                    workers.add(null);
+                    continue;
+                }
+                final File fileList = workDir.resolve("shard-" + i + ".files").toFile();
+                FileUtils.writeLines(fileList, StandardCharsets.UTF_8.name(),
+                        shard.stream().map(File::getAbsolutePath).collect(Collectors.toList()), "\n");
+                final Properties job = new Properties();
+                job.setProperty(ShardWorker.PROJECT_ROOT, tool.getProjectRoot().getAbsolutePath());
+                job.setProperty(ShardWorker.VERSION, tool.getVaadin8Version());
+                job.setProperty(ShardWorker.CHARSET, tool.getCharset().name());
+                job.setProperty(ShardWorker.SNAPSHOT, String.valueOf(tool.isSnapshot()));
+                if (tool.getCharsetFallback() != null) {
+                    job.setProperty(ShardWorker.CHARSET_FALLBACK, tool.getCharsetFallback().name());
+                }
+                job.setProperty(ShardWorker.CLASS_LIST, classListSnapshot.getAbsolutePath());
+                job.setProperty(ShardWorker.FILES, fileList.getAbsolutePath());
+                job.setProperty(ShardWorker.REPORT, report.getAbsolutePath());
+                final File jobFile = workDir.resolve("shard-" + i + ".job").toFile();
+                try (OutputStream out = new FileOutputStream(jobFile)) {
+                    job.store(out, "Migration shard " + (i + 1) + "/" + shards);
+                }
+                workers.add(startWorker(jobFile));
+            }
+            System.out.println("Started " + workers.stream().filter(Objects::nonNull).count() + " worker JVMs for "
+                    + partitions.stream().mapToInt(List::size).sum() + " files");
+
+            IOException failure = null;
+            for (int i = 0; i < shards; i++) {
+                final Process worker = workers.get(i);
+                if (worker == null) {
+                    continue;
+                }
+                final int exitCode = worker.waitFor();
+                if (exitCode != 0) {
+                    failure = new IOException("Shard " + (i + 1) + "/" + shards + " failed with exit code " + exitCode);
+                    continue;
+                }
+                final Properties report = new Properties();
+                try (InputStream in = new FileInputStream(reports.get(i))) {
+                    report.load(in);
+                }
+                final MigrationResult shardResult = MigrationResult.fromProperties(report);
+                System.out.println("Shard " + (i + 1) + "/" + shards + ": " + partitions.get(i).size() + " files, "
+                        + shardResult.getChangedFiles() + " changed");
+                result.add(shardResult);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            FileUtils.deleteDirectory(workDir.toFile());
+        }
+        result.print();
+        return result;
+    }
+
+    private static Process startWorker(File jobFile) throws IOException {
+        final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShardWorker.class.getName(), jobFile.getAbsolutePath())
+                .inheritIO()
+                .start();
+    }
+}
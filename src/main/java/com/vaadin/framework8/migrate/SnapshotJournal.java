@@ -0,0 +1,127 @@
+package com.vaadin.framework8.migrate;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the original of every file the migration overwrites, so that the migration can be undone with {@link #rollback(File)}.
+ * The originals are stored in the {@value #DIRECTORY_NAME} folder in the project root, under their project-relative paths,
+ * and the {@value #INDEX_FILE_NAME} file lists them. The original is recorded just before the first write, as a hard link
+ * where the file system supports it, and as a copy otherwise; the cost is therefore proportional to the number of changed
+ * files, not to the size of the project.
+ * <p>
+ * A hard link shares the contents with the original file, so the new contents must be written into a new file which then
+ * replaces the original one, as {@link OutputStage} does.
+ */
+public class SnapshotJournal implements Closeable {
+    public static final String DIRECTORY_NAME = ".migration-snapshot";
+    static final String INDEX_FILE_NAME = "index";
+    private static final String FILES_DIRECTORY_NAME = "files";
+
+    private final Path projectRoot;
+    private final Path filesDir;
+    private final Set<String> recorded = new HashSet<>();
+    private final BufferedWriter index;
+
+    private SnapshotJournal(Path projectRoot) throws IOException {
+        this.projectRoot = projectRoot;
+        final Path journalDir = projectRoot.resolve(DIRECTORY_NAME);
+        filesDir = journalDir.resolve(FILES_DIRECTORY_NAME);
+        Files.createDirectories(filesDir);
+        final Path indexFile = journalDir.resolve(INDEX_FILE_NAME);
+        if (Files.exists(indexFile)) {
+            // a previous snapshot run which hasn't been rolled back; its originals are older, keep them
+            recorded.addAll(Files.readAllLines(indexFile, StandardCharsets.UTF_8));
+        }
+        index = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Opens the journal of given project, creating it if necessary.
+     * @param projectRoot the project root, not null.
+     * @return the journal, not null. Must be closed.
+     * @throws IOException on I/O error.
+     */
+    public static SnapshotJournal open(File projectRoot) throws IOException {
+        return new SnapshotJournal(projectRoot.toPath().toAbsolutePath().normalize());
+    }
+
+    private String relativize(Path file) throws IOException {
+        final Path normalized = file.toAbsolutePath().normalize();
+        if (!normalized.startsWith(projectRoot)) {
+            throw new IOException("Can't record " + file + ": it is outside the project " + projectRoot);
+        }
+        return projectRoot.relativize(normalized).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Records the original of given file, unless it has been recorded already.
+     * @param file the file which is about to be overwritten, not null.
+     * @throws IOException on I/O error.
+     */
+    public synchronized void recordOriginal(File file) throws IOException {
+        final String relativePath = relativize(file.toPath());
+        if (!recorded.add(relativePath)) {
+            return;
+        }
+        final Path original = filesDir.resolve(relativePath);
+        Files.createDirectories(original.getParent());
+        Files.deleteIfExists(original);
+        try {
+            Files.createLink(original, file.toPath());
+        } catch (IOException | UnsupportedOperationException ex) {
+            // different file store, or no hard link support
+            Files.copy(file.toPath(), original, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        index.write(relativePath);
+        index.newLine();
+        index.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.close();
+    }
+
+    /**
+     * Restores all files recorded in the journal of given project, then deletes the journal.
+     * @param projectRoot the project root, not null.
+     * @return the number of restored files.
+     * @throws IOException on I/O error, or if there is no journal.
+     */
+    public static int rollback(File projectRoot) throws IOException {
+        final Path root = projectRoot.toPath().toAbsolutePath().normalize();
+        final Path journalDir = root.resolve(DIRECTORY_NAME);
+        final Path indexFile = journalDir.resolve(INDEX_FILE_NAME);
+        if (!Files.exists(indexFile)) {
+            throw new IOException("There is no snapshot to roll back to: " + indexFile + " does not exist");
+        }
+        final List<String> relativePaths = Files.readAllLines(indexFile, StandardCharsets.UTF_8);
+        int restored = 0;
+        for (String relativePath : relativePaths) {
+            final Path original = journalDir.resolve(FILES_DIRECTORY_NAME).resolve(relativePath);
+            if (!root.resolve(relativePath).normalize().startsWith(root)) {
+                System.out.println("Not restoring " + relativePath + ": it is outside the project");
+            } else if (Files.exists(original, LinkOption.NOFOLLOW_LINKS)) {
+                Files.move(original, root.resolve(relativePath), StandardCopyOption.REPLACE_EXISTING);
+                restored++;
+            }
+        }
+        FileUtils.deleteDirectory(journalDir.toFile());
+        System.out.println("Restored " + restored + " files from " + journalDir);
+        return restored;
+    }
+}
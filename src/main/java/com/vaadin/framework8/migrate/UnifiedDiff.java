@@ -0,0 +1,208 @@
+package com.vaadin.framework8.migrate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Formats the {@link MigrationEngine.Edit edits} of a file as a unified diff which {@code git apply} and {@code patch -p1}
+ * understand. The hunks are built from the edit positions directly: only the lines the edits touch are looked at, the
+ * file is never line-diffed as a whole.
+ */
+class UnifiedDiff {
+    private static final int CONTEXT = 3;
+    private static final String NO_NEWLINE = "\\ No newline at end of file\n";
+
+    private final String original;
+    /**
+     * Start offsets of the lines of {@link #original}. If the text ends with a newline, the last offset is the text length.
+     */
+    private final int[] lineStarts;
+    /**
+     * The number of lines; a trailing newline doesn't start a new line.
+     */
+    private final int lineCount;
+
+    private UnifiedDiff(String original) {
+        this.original = original;
+        int count = 1;
+        for (int i = 0; i < original.length(); i++) {
+            if (original.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        lineStarts = new int[count];
+        int line = 1;
+        for (int i = 0; i < original.length(); i++) {
+            if (original.charAt(i) == '\n') {
+                lineStarts[line++] = i + 1;
+            }
+        }
+        lineCount = lineStarts[count - 1] == original.length() ? count - 1 : count;
+    }
+
+    /**
+     * Formats the diff of a single file.
+     * @param path the path of the file relative to the project root, with forward slashes, not null.
+     * @param original the original contents, not null.
+     * @param edits sorted, not overlapping edits of the original contents, not null.
+     * @return the diff, empty if there are no edits.
+     */
+    static String format(String path, String original, List<MigrationEngine.Edit> edits) {
+        if (edits.isEmpty()) {
+            return "";
+        }
+        return new UnifiedDiff(original).format(path, edits);
+    }
+
+    private String format(String path, List<MigrationEngine.Edit> edits) {
+        final List<Block> blocks = new ArrayList<>();
+        for (MigrationEngine.Edit edit : edits) {
+            final int firstLine = lineOf(edit.start);
+            final int lastLine = edit.end > edit.start ? lineOf(edit.end - 1) : firstLine;
+            final Block previous = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            if (previous != null && firstLine <= previous.lastLine) {
+                previous.lastLine = Math.max(previous.lastLine, lastLine);
+                previous.edits.add(edit);
+            } else {
+                blocks.add(new Block(firstLine, lastLine, edit));
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append("--- a/").append(path).append('\n');
+        sb.append("+++ b/").append(path).append('\n');
+        int delta = 0;
+        for (int first = 0; first < blocks.size(); ) {
+            int last = first;
+            while (last + 1 < blocks.size() && blocks.get(last + 1).firstLine - blocks.get(last).lastLine - 1 <= 2 * CONTEXT) {
+                last++;
+            }
+            delta = appendHunk(sb, blocks.subList(first, last + 1), delta);
+            first = last + 1;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends a hunk of given blocks, with context lines around them.
+     * @param delta the difference of the new and old line numbers before this hunk.
+     * @return the difference after this hunk.
+     */
+    private int appendHunk(StringBuilder sb, List<Block> blocks, int delta) {
+        final int hunkFirst = Math.max(0, blocks.get(0).firstLine - CONTEXT);
+        final int hunkLast = Math.min(lineCount - 1, blocks.get(blocks.size() - 1).lastLine + CONTEXT);
+        final StringBuilder body = new StringBuilder();
+        int oldLines = 0;
+        int newLines = 0;
+        int line = hunkFirst;
+        for (Block block : blocks) {
+            for (; line < block.firstLine; line++) {
+                appendLine(body, ' ', line(line));
+                oldLines++;
+                newLines++;
+            }
+            final List<String> removed = splitLines(text(block.firstLine, block.lastLine));
+            final List<String> added = splitLines(block.apply());
+            for (String removedLine : removed) {
+                appendLine(body, '-', removedLine);
+            }
+            for (String addedLine : added) {
+                appendLine(body, '+', addedLine);
+            }
+            oldLines += removed.size();
+            newLines += added.size();
+            line = block.lastLine + 1;
+        }
+        for (; line <= hunkLast; line++) {
+            appendLine(body, ' ', line(line));
+            oldLines++;
+            newLines++;
+        }
+        final int oldStart = oldLines == 0 ? hunkFirst : hunkFirst + 1;
+        final int newStart = newLines == 0 ? hunkFirst + delta : hunkFirst + delta + 1;
+        sb.append("@@ -").append(oldStart).append(',').append(oldLines)
+                .append(" +").append(newStart).append(',').append(newLines).append(" @@\n")
+                .append(body);
+        return delta + newLines - oldLines;
+    }
+
+    private static void appendLine(StringBuilder sb, char marker, String line) {
+        sb.append(marker).append(line);
+        if (!line.endsWith("\n")) {
+            sb.append('\n').append(NO_NEWLINE);
+        }
+    }
+
+    private int lineOf(int offset) {
+        int low = 0;
+        int high = lineStarts.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (lineStarts[middle] <= offset) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private int lineEnd(int line) {
+        return line + 1 < lineStarts.length ? lineStarts[line + 1] : original.length();
+    }
+
+    private String line(int line) {
+        return original.substring(lineStarts[line], lineEnd(line));
+    }
+
+    /**
+     * The text of given lines, including their line terminators.
+     */
+    private String text(int firstLine, int lastLine) {
+        return original.substring(lineStarts[firstLine], lineEnd(lastLine));
+    }
+
+    /**
+     * Splits the text into lines, keeping the {@code \n} terminators; a trailing newline doesn't start a new line.
+     */
+    private static List<String> splitLines(String text) {
+        final List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            final int newline = text.indexOf('\n', start);
+            final int end = newline < 0 ? text.length() : newline + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+
+    /**
+     * A run of lines changed by one or more edits.
+     */
+    private class Block {
+        final int firstLine;
+        int lastLine;
+        final List<MigrationEngine.Edit> edits = new ArrayList<>();
+
+        Block(int firstLine, int lastLine, MigrationEngine.Edit edit) {
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            edits.add(edit);
+        }
+
+        /**
+         * The new text of the lines of this block.
+         */
+        String apply() {
+            final int offset = lineStarts[firstLine];
+            final StringBuilder sb = new StringBuilder();
+            int copied = offset;
+            for (MigrationEngine.Edit edit : edits) {
+                sb.append(original, copied, edit.start).append(edit.replacement);
+                copied = edit.end;
+            }
+            return sb.append(original, copied, lineEnd(lastLine)).toString();
+        }
+    }
+}
@@ -1,41 +1,63 @@
 package com.vaadin.framework8.migrate;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
-import java.util.Optional;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
 
 /**
- * Scans Vaadin {@code vaadin-server.jar}, {@code vaadin-shared.jar} and {@code vaadin-client.jar} for Vaadin classes and builds
+ * Scans Vaadin {@code vaadin-server.jar}, {@code vaadin-shared.jar} and {@code vaadin-client.jar} (in parallel, see
+ * {@link JarClassScanner}) for Vaadin classes and builds
  * a list of v7 compat class names. See {@link #serverV7Classes}, {@link #sharedV7Classes}, {@link #serverV7UIClasses}
  * and {@link #clientV7Classes} for more details.
+ * <p>
+ * The class list is immutable, so that one instance can be shared by any number of migrations, see
+ * {@link VaadinClassListRegistry}.
  * @author mavi
  */
 public class VaadinClassList {
     /**
-     * Contains full names of server v7 classes, such as "com.vaadin.v7.ui.Button".
+     * Contains full names of server v7 classes, such as "com.vaadin.v7.ui.Button". Unmodifiable.
      */
-    public final Set<String> serverV7Classes = new HashSet<>();
+    public final Set<String> serverV7Classes;
     /**
-     * Contains full names of shared v7 classes.
+     * Contains full names of shared v7 classes. Unmodifiable.
      */
-    public final Set<String> sharedV7Classes = new HashSet<>();
+    public final Set<String> sharedV7Classes;
     /**
-     * A subset of {@link #serverV7Classes}, only contains "com.vaadin.v7.ui.*" classes.
+     * A subset of {@link #serverV7Classes}, only contains "com.vaadin.v7.ui.*" classes. Unmodifiable.
      */
-    public final Set<String> serverV7UIClasses = new HashSet<>();
+    public final Set<String> serverV7UIClasses;
     /**
-     * Contains full names of client v7 classes.
+     * Contains full names of client v7 classes. Unmodifiable.
      */
-    public final Set<String> clientV7Classes = new HashSet<>();
+    public final Set<String> clientV7Classes;
+
+    /**
+     * Takes ownership of given sets.
+     */
+    private VaadinClassList(Set<String> serverV7Classes, Set<String> sharedV7Classes, Set<String> serverV7UIClasses,
+                            Set<String> clientV7Classes) {
+        this.serverV7Classes = Collections.unmodifiableSet(serverV7Classes);
+        this.sharedV7Classes = Collections.unmodifiableSet(sharedV7Classes);
+        this.serverV7UIClasses = Collections.unmodifiableSet(serverV7UIClasses);
+        this.clientV7Classes = Collections.unmodifiableSet(clientV7Classes);
+    }
 
     /**
      * Return full names of all Vaadin classes (classes in the "com.vaadin.ui" package). For example returns "com.vaadin.v7.ui.Button".
@@ -47,28 +69,43 @@ public class VaadinClassList {
                 .collect(Collectors.toSet());
     }
 
+    /**
+     * The compatibility jars the class list is built from. Each segment can be loaded on its own, see {@link LazyClassList}.
+     */
+    public enum Segment {
+        /**
+         * {@code vaadin-compatibility-server}: the "com.vaadin.v7.ui", "com.vaadin.v7.data", ... classes.
+         */
+        SERVER("vaadin-compatibility-server"),
+        /**
+         * {@code vaadin-compatibility-shared}: the "com.vaadin.v7.shared" classes.
+         */
+        SHARED("vaadin-compatibility-shared"),
+        /**
+         * {@code vaadin-compatibility-client}: the "com.vaadin.v7.client" classes.
+         */
+        CLIENT("vaadin-compatibility-client");
+
+        final String artifactId;
+
+        Segment(String artifactId) {
+            this.artifactId = artifactId;
+        }
+    }
+
     public static VaadinClassList getForVaadin(String version) throws IOException {
         System.out.println("Scanning for compatibility classes for " + version
                 + " version...");
-        String compatServerFilename = VadinJarFinder
-                .get("vaadin-compatibility-server", version);
-        String compatSharedFilename = VadinJarFinder
-                .get("vaadin-compatibility-shared", version);
-        String compatClientFilename = VadinJarFinder
-                .get("vaadin-compatibility-client", version);
-
-        final VaadinClassList cl = new VaadinClassList();
-
-        findV7Classes(compatServerFilename, cl.serverV7Classes);
-        findV7Classes(compatSharedFilename, cl.sharedV7Classes);
-        findV7Classes(compatClientFilename, cl.clientV7Classes);
-
-        // This is used in interface and will break more than it fixes
-        cl.clientV7Classes.remove("com.vaadin.v7.client.ComponentConnector");
-
-        cl.serverV7UIClasses.addAll(cl.serverV7Classes.stream().filter(
-                cls -> cls.matches("^com\\.vaadin\\.v7\\.ui\\.[^\\.]*$"))
-                .collect(Collectors.toSet()));
+        final List<File> jars = new ArrayList<>();
+        for (Segment segment : Segment.values()) {
+            jars.add(new File(VadinJarFinder.get(segment.artifactId, version)));
+        }
+        final List<Set<String>> v7Classes = JarClassScanner.scan(jars, "com/vaadin/v7", VaadinClassList::toClassName);
+        final Map<Segment, Set<String>> segments = new EnumMap<>(Segment.class);
+        for (Segment segment : Segment.values()) {
+            segments.put(segment, filter(segment, v7Classes.get(segment.ordinal())));
+        }
+        final VaadinClassList cl = of(segments);
 
         System.out.println("Found " + cl.serverV7Classes.size() + "+"
                 + cl.sharedV7Classes.size() + " classes, including "
@@ -77,32 +114,110 @@ public class VaadinClassList {
         return cl;
     }
 
-    private static void findV7Classes(String jarFilename, Set<String> target)
-            throws ZipException, IOException {
-        File serverFile = new File(jarFilename);
-        try (ZipFile jar = new ZipFile(serverFile)) {
-            Enumeration<? extends ZipEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                ZipEntry entry = entries.nextElement();
-                if (entry.isDirectory()) {
-                    continue;
-                }
+    /**
+     * Scans a single compatibility jar.
+     * @param segment the jar to scan, not null.
+     * @param version the Vaadin version, not null.
+     * @return the v7 class names found in the jar, not null.
+     * @throws IOException if the jar can't be resolved or read.
+     */
+    public static Set<String> getSegmentForVaadin(Segment segment, String version) throws IOException {
+        final File jar = new File(VadinJarFinder.get(segment.artifactId, version));
+        final Set<String> classes = filter(segment, JarClassScanner.scan(jar, "com/vaadin/v7", VaadinClassList::toClassName));
+        System.out.println("Found " + classes.size() + " classes in " + segment.artifactId + " " + version);
+        return classes;
+    }
+
+    private static Set<String> filter(Segment segment, Set<String> classes) {
+        if (segment == Segment.CLIENT) {
+            // This is used in interface and will break more than it fixes
+            classes.remove("com.vaadin.v7.client.ComponentConnector");
+        }
+        return classes;
+    }
 
-                getVaadin7Class(entry).ifPresent(target::add);
+    /**
+     * Builds the class list out of the classes of given segments; missing segments are left empty.
+     * @param segments maps segments to the v7 class names found in their jars, not null.
+     * @return the class list, not null.
+     */
+    public static VaadinClassList of(Map<Segment, Set<String>> segments) {
+        final Set<String> server = new HashSet<>(segments.getOrDefault(Segment.SERVER, Collections.emptySet()));
+        final Set<String> serverUI = server.stream().filter(
+                cls -> cls.matches("^com\\.vaadin\\.v7\\.ui\\.[^\\.]*$"))
+                .collect(Collectors.toCollection(HashSet::new));
+        return new VaadinClassList(server, new HashSet<>(segments.getOrDefault(Segment.SHARED, Collections.emptySet())),
+                serverUI, new HashSet<>(segments.getOrDefault(Segment.CLIENT, Collections.emptySet())));
+    }
+
+    /**
+     * The classes of given segment.
+     * @param segment the segment, not null.
+     * @return the unmodifiable set of this class list, not null.
+     */
+    public Set<String> getClasses(Segment segment) {
+        switch (segment) {
+            case SERVER:
+                return serverV7Classes;
+            case SHARED:
+                return sharedV7Classes;
+            default:
+                return clientV7Classes;
+        }
+    }
+
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    /**
+     * Stores this class list into a compact binary file which {@link #readSnapshot(File)} loads without touching
+     * Maven or any jar.
+     * @param file the file to write, not null.
+     * @throws IOException on I/O error.
+     */
+    public void writeSnapshot(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(SNAPSHOT_FORMAT);
+            for (Set<String> set : Arrays.asList(serverV7Classes, sharedV7Classes, serverV7UIClasses, clientV7Classes)) {
+                out.writeInt(set.size());
+                for (String className : set) {
+                    out.writeUTF(className);
+                }
             }
         }
     }
 
-    private static Optional<String> getVaadin7Class(ZipEntry entry) {
-        String name = entry.getName();
-        if (name.startsWith("com/vaadin/v7") && name.endsWith(".class")) {
-            name = name.replace('/', '.');
-            name = name.replace('$', '.');
-            name = name.replace(".class", "");
-            return Optional.of(name);
+    /**
+     * Reads a class list written by {@link #writeSnapshot(File)}.
+     * @param file the snapshot file, not null.
+     * @return the class list, not null.
+     * @throws IOException on I/O error or if the file is not a class list snapshot.
+     */
+    public static VaadinClassList readSnapshot(File file) throws IOException {
+        final List<Set<String>> sets = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_FORMAT) {
+                throw new IOException(file + " is not a class list snapshot");
+            }
+            for (int s = 0; s < 4; s++) {
+                final int size = in.readInt();
+                final Set<String> set = new HashSet<>();
+                for (int i = 0; i < size; i++) {
+                    set.add(in.readUTF());
+                }
+                sets.add(set);
+            }
         }
+        return new VaadinClassList(sets.get(0), sets.get(1), sets.get(2), sets.get(3));
+    }
 
-        return Optional.empty();
+    /**
+     * Converts a jar entry name, e.g. "com/vaadin/v7/ui/Grid$Column.class", to the class name, e.g. "com.vaadin.v7.ui.Grid.Column".
+     */
+    private static String toClassName(String entryName) {
+        String name = entryName.replace('/', '.');
+        name = name.replace('$', '.');
+        name = name.replace(".class", "");
+        return name;
     }
 
     /**
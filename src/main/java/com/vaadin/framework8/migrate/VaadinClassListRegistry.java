@@ -0,0 +1,139 @@
+package com.vaadin.framework8.migrate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.vaadin.framework8.migrate.VaadinClassList.Segment;
+
+/**
+ * Loads every {@link VaadinClassList.Segment segment} of the class list at most once per JVM and version, so that
+ * several {@link MigrationTool}s, e.g. of a build migrating several project roots or of the test suite, share it.
+ * <p>
+ * Concurrent requests for a segment which is not loaded yet wait for a single load. A failed load is not remembered,
+ * the next request tries again. The loaded classes are unmodifiable and only softly referenced: a version nobody
+ * uses any more is evicted when memory gets low, and loaded again when needed.
+ */
+public final class VaadinClassListRegistry {
+    private static final ConcurrentMap<String, CompletableFuture<Reference<Set<String>>>> SEGMENTS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Reference<VaadinClassList>> CLASS_LISTS = new ConcurrentHashMap<>();
+
+    private VaadinClassListRegistry() {
+    }
+
+    /**
+     * The classes of given segment, loading them if necessary.
+     * @param segment the segment, not null.
+     * @param version the Vaadin version, not null.
+     * @return the unmodifiable class names, not null.
+     * @throws IOException if the jar can't be resolved or read.
+     */
+    public static Set<String> getSegment(Segment segment, String version) throws IOException {
+        final String key = version + ':' + segment;
+        while (true) {
+            CompletableFuture<Reference<Set<String>>> future = SEGMENTS.get(key);
+            if (future == null) {
+                final CompletableFuture<Reference<Set<String>>> loading = new CompletableFuture<>();
+                future = SEGMENTS.putIfAbsent(key, loading);
+                if (future == null) {
+                    return load(key, loading, segment, version);
+                }
+            }
+            final Set<String> classes = await(future).get();
+            if (classes != null) {
+                return classes;
+            }
+            // evicted; the first thread to get here loads it again
+            SEGMENTS.remove(key, future);
+        }
+    }
+
+    private static Set<String> load(String key, CompletableFuture<Reference<Set<String>>> loading, Segment segment,
+                                    String version) throws IOException {
+        try {
+            final Set<String> classes = Collections.unmodifiableSet(VaadinClassList.getSegmentForVaadin(segment, version));
+            loading.complete(new SoftReference<>(classes));
+            return classes;
+        } catch (IOException | RuntimeException ex) {
+            SEGMENTS.remove(key, loading);
+            loading.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * The whole class list of given version; the missing segments are loaded in parallel.
+     * @param version the Vaadin version, not null.
+     * @return the class list, not null.
+     * @throws IOException if a jar can't be resolved or read.
+     */
+    public static VaadinClassList get(String version) throws IOException {
+        final Reference<VaadinClassList> cached = CLASS_LISTS.get(version);
+        final VaadinClassList cachedList = cached == null ? null : cached.get();
+        if (cachedList != null) {
+            return cachedList;
+        }
+        final List<CompletableFuture<Set<String>>> futures = new ArrayList<>();
+        for (Segment segment : Segment.values()) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return getSegment(segment, version);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }));
+        }
+        final Map<Segment, Set<String>> segments = new EnumMap<>(Segment.class);
+        for (Segment segment : Segment.values()) {
+            segments.put(segment, awaitSegment(futures.get(segment.ordinal())));
+        }
+        // two threads may both build the list here; it's cheap and both results are equal
+        final VaadinClassList classList = VaadinClassList.of(segments);
+        CLASS_LISTS.put(version, new SoftReference<>(classList));
+        return classList;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private static Set<String> awaitSegment(CompletableFuture<Set<String>> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Forgets all loaded versions.
+     */
+    static void clear() {
+        SEGMENTS.clear();
+        CLASS_LISTS.clear();
+    }
+}
@@ -0,0 +1,14 @@
+@echo off
+rem Migrates the project in the current directory. Uses the class data sharing archive built next to the jar by the
+rem appcds profile when there is one, which cuts the JVM startup time.
+setlocal
+set "JAR=%~dp0@project.build.finalName@.jar"
+set "JSA=%~dp0@project.build.finalName@.jsa"
+set "JAVA=java"
+if defined JAVA_HOME set "JAVA=%JAVA_HOME%\bin\java"
+if exist "%JSA%" (
+    "%JAVA%" -XX:SharedArchiveFile="%JSA%" -Xshare:auto -jar "%JAR%" %*
+) else (
+    "%JAVA%" -jar "%JAR%" %*
+)
+exit /b %ERRORLEVEL%
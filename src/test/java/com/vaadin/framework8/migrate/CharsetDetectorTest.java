@@ -0,0 +1,64 @@
+package com.vaadin.framework8.migrate;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CharsetDetectorTest {
+    private static final Charset CP1252 = Charset.forName("windows-1252");
+    private final CharsetDetector detector = new CharsetDetector(CP1252);
+
+    @Test
+    public void ascii() {
+        assertEquals(StandardCharsets.ISO_8859_1, detector.detect("class Foo {}".getBytes(StandardCharsets.US_ASCII)).charset);
+        assertEquals(StandardCharsets.ISO_8859_1, detector.detect(new byte[0]).charset);
+    }
+
+    @Test
+    public void utf8() {
+        assertEquals(StandardCharsets.UTF_8, detector.detect("// Geschäftspartner €".getBytes(StandardCharsets.UTF_8)).charset);
+        assertEquals(StandardCharsets.UTF_8, detector.detect("// 😀".getBytes(StandardCharsets.UTF_8)).charset);
+    }
+
+    @Test
+    public void fallback() {
+        assertEquals(CP1252, detector.detect("// Geschäftspartner €".getBytes(CP1252)).charset);
+        // overlong encoding of '/', a surrogate, and a truncated sequence
+        assertFalse(CharsetDetector.isValidUtf8(new byte[]{(byte) 0xC0, (byte) 0xAF}, 0));
+        assertFalse(CharsetDetector.isValidUtf8(new byte[]{(byte) 0xED, (byte) 0xA0, (byte) 0x80}, 0));
+        assertFalse(CharsetDetector.isValidUtf8(new byte[]{'a', (byte) 0xE2, (byte) 0x82}, 0));
+        assertTrue(CharsetDetector.isValidUtf8(new byte[]{(byte) 0xE2, (byte) 0x82, (byte) 0xAC}, 0));
+    }
+
+    @Test
+    public void byteOrderMarkIsKept() {
+        final byte[] utf16 = "﻿import com.vaadin.ui.Label;".getBytes(StandardCharsets.UTF_16LE);
+        final CharsetDetector.Encoding encoding = detector.detect(utf16);
+        assertEquals(StandardCharsets.UTF_16LE, encoding.charset);
+        assertEquals("import com.vaadin.ui.Label;", encoding.decode(utf16));
+        assertArrayEquals(utf16, encoding.encode("import com.vaadin.ui.Label;"));
+
+        final byte[] utf8 = "﻿class Foo {}".getBytes(StandardCharsets.UTF_8);
+        assertEquals("class Foo {}", detector.detect(utf8).decode(utf8));
+        assertArrayEquals(utf8, detector.detect(utf8).encode("class Foo {}"));
+    }
+
+    @Test
+    public void undefinedBytesDontRoundTrip() {
+        final byte[] undefined = {'/', '/', ' ', (byte) 0x81, (byte) 0x8D, (byte) 0x8F, (byte) 0x90, (byte) 0x9D};
+        final CharsetDetector.Encoding cp1252 = detector.detect(undefined);
+        assertEquals(CP1252, cp1252.charset);
+        assertFalse(cp1252.roundTrips(undefined, cp1252.decode(undefined)));
+        final CharsetDetector.Encoding latin1 = new CharsetDetector(StandardCharsets.ISO_8859_1).detect(undefined);
+        assertTrue(latin1.roundTrips(undefined, latin1.decode(undefined)));
+        // a genuine U+FFFD is kept
+        final byte[] replacement = "// \uFFFD".getBytes(StandardCharsets.UTF_8);
+        assertTrue(detector.detect(replacement).roundTrips(replacement, detector.detect(replacement).decode(replacement)));
+    }
+}
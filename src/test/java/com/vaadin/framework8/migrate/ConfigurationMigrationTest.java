@@ -0,0 +1,110 @@
+package com.vaadin.framework8.migrate;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ConfigurationMigrationTest {
+    private static final String POM = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+            "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\r\n" +
+            "\t<properties>\r\n" +
+            "\t\t<vaadin.version>7.7.10</vaadin.version> <!-- keep me -->\r\n" +
+            "\t</properties>\r\n" +
+            "\t<dependencies>\r\n" +
+            "\t\t<dependency>\r\n" +
+            "\t\t\t<artifactId>vaadin-server</artifactId>\r\n" +
+            "\t\t\t<groupId>com.vaadin</groupId>\r\n" +
+            "\t\t</dependency>\r\n" +
+            "\t\t<dependency><groupId>com.vaadin</groupId><artifactId>  vaadin-client-compiled  </artifactId></dependency>\r\n" +
+            "\t\t<dependency><groupId>org.example</groupId><artifactId>vaadin-server</artifactId></dependency>\r\n" +
+            "\t</dependencies>\r\n" +
+            "</project>\r\n";
+
+    @Test
+    public void pomDependenciesAndVersionAreMigrated() throws Exception {
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+                "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\r\n" +
+                "\t<properties>\r\n" +
+                "\t\t<vaadin.version>8.5.2</vaadin.version> <!-- keep me -->\r\n" +
+                "\t</properties>\r\n" +
+                "\t<dependencies>\r\n" +
+                "\t\t<dependency>\r\n" +
+                "\t\t\t<artifactId>vaadin-compatibility-server</artifactId>\r\n" +
+                "\t\t\t<groupId>com.vaadin</groupId>\r\n" +
+                "\t\t</dependency>\r\n" +
+                "\t\t<dependency><groupId>com.vaadin</groupId><artifactId>  vaadin-compatibility-client-compiled  </artifactId></dependency>\r\n" +
+                "\t\t<dependency><groupId>org.example</groupId><artifactId>vaadin-server</artifactId></dependency>\r\n" +
+                "\t</dependencies>\r\n" +
+                "</project>\r\n", ConfigurationMigration.migratePom(POM, "8.5.2"));
+    }
+
+    @Test
+    public void pomWithCompatibilityDependencyIsNotDuplicated() throws Exception {
+        final String pom = "<project><properties><vaadin.version>8.0.5</vaadin.version></properties><dependencies>\n" +
+                "<dependency><groupId>com.vaadin</groupId><artifactId>vaadin-server</artifactId></dependency>\n" +
+                "<dependency><groupId>com.vaadin</groupId><artifactId>vaadin-compatibility-server</artifactId></dependency>\n" +
+                "<dependency><groupId>com.vaadin</groupId><artifactId>vaadin-push</artifactId></dependency>\n" +
+                "</dependencies></project>";
+        assertSame(pom, ConfigurationMigration.migratePom(pom, "8.5.2"));
+    }
+
+    @Test
+    public void pomMarkupInCdataAndProcessingInstructionsIsKept() throws Exception {
+        final String pom = "<project><?ignore <vaadin.version>7.0</vaadin.version> ?>\n" +
+                "<description><![CDATA[<vaadin.version>7.0</vaadin.version> <a>]]></description>\n" +
+                "<properties><vaadin.version>7.7.10</vaadin.version></properties><dependencies>\n" +
+                "<dependency><groupId>com.vaadin</groupId><artifactId>vaadin-server</artifactId></dependency>\n" +
+                "</dependencies></project>";
+        assertEquals("<project><?ignore <vaadin.version>7.0</vaadin.version> ?>\n" +
+                "<description><![CDATA[<vaadin.version>7.0</vaadin.version> <a>]]></description>\n" +
+                "<properties><vaadin.version>8.5.2</vaadin.version></properties><dependencies>\n" +
+                "<dependency><groupId>com.vaadin</groupId><artifactId>vaadin-compatibility-server</artifactId></dependency>\n" +
+                "</dependencies></project>", ConfigurationMigration.migratePom(pom, "8.5.2"));
+    }
+
+    @Test
+    public void webXmlWidgetsetIsMigrated() throws Exception {
+        final String webXml = "<?xml version=\"1.0\"?>\n" +
+                "<!DOCTYPE web-app PUBLIC \"-//Sun Microsystems, Inc.//DTD Web Application 2.3//EN\" \"http://java.sun.com/dtd/web-app_2_3.dtd\">\n" +
+                "<web-app>\n" +
+                "  <servlet>\n" +
+                "    <init-param>\n" +
+                "      <param-name>UI</param-name>\n" +
+                "      <param-value>com.example.MyUI</param-value>\n" +
+                "    </init-param>\n" +
+                "    <init-param>\n" +
+                "      <!-- the widgetset -->\n" +
+                "      <param-value>\n        com.vaadin.DefaultWidgetSet\n      </param-value>\n" +
+                "      <param-name>widgetset</param-name>\n" +
+                "    </init-param>\n" +
+                "  </servlet>\n" +
+                "</web-app>\n";
+        assertEquals(webXml.replace("com.vaadin.DefaultWidgetSet", "com.vaadin.v7.Vaadin7WidgetSet"),
+                ConfigurationMigration.migrateWebXml(webXml));
+    }
+
+    @Test
+    public void xmlEncodingIsDetected() throws Exception {
+        assertEquals(StandardCharsets.UTF_8, ConfigurationMigration.detectEncoding("<project/>".getBytes(StandardCharsets.UTF_8)).charset);
+        assertEquals(StandardCharsets.ISO_8859_1, ConfigurationMigration.detectEncoding(
+                "<?xml version='1.0' encoding='ISO-8859-1'?>\n<project/>".getBytes(StandardCharsets.ISO_8859_1)).charset);
+        assertEquals(Charset.forName("windows-1252"), ConfigurationMigration.detectEncoding(
+                "<?xml version=\"1.0\" encoding=\"windows-1252\"?><project/>".getBytes(StandardCharsets.ISO_8859_1)).charset);
+        final byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '<', 'a', '/', '>'};
+        assertEquals("<a/>", ConfigurationMigration.detectEncoding(bom).decode(bom));
+        assertThrows(XMLStreamException.class, () -> ConfigurationMigration.detectEncoding(
+                "<?xml version=\"1.0\" encoding=\"no-such-charset\"?><project/>".getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test
+    public void widgetsetAnnotationIsMigrated() {
+        assertEquals("@Widgetset(\"com.vaadin.v7.Vaadin7WidgetSet\")\n@Theme(\"com.vaadin.DefaultWidgetSetx\")",
+                ConfigurationMigration.migrateWidgetsetLiterals("@Widgetset(\"com.vaadin.DefaultWidgetSet\")\n@Theme(\"com.vaadin.DefaultWidgetSetx\")"));
+    }
+}
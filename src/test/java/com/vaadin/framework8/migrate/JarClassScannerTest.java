@@ -0,0 +1,81 @@
+package com.vaadin.framework8.migrate;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JarClassScannerTest {
+    private static final Function<String, String> NAME = Function.identity();
+
+    @Test
+    public void matchesZipFileOnVaadinJars() throws Exception {
+        final List<File> jars = Arrays.asList(
+                new File(VadinJarFinder.get("vaadin-compatibility-server", "8.5.2")),
+                new File(VadinJarFinder.get("vaadin-compatibility-shared", "8.5.2")),
+                new File(VadinJarFinder.get("vaadin-compatibility-client", "8.5.2")));
+        final List<Set<String>> scanned = JarClassScanner.scan(jars, "com/vaadin/v7", NAME);
+        for (int i = 0; i < jars.size(); i++) {
+            assertEquals(listWithZipFile(jars.get(i), "com/vaadin/v7"), scanned.get(i), jars.get(i).toString());
+        }
+    }
+
+    @Test
+    public void skipsResourcesDirectoriesAndOtherPackages() throws Exception {
+        final File jar = File.createTempFile("scanner", ".jar");
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+                out.setComment("a comment, so that the end of central directory record is not at the very end");
+                for (String name : new String[]{"META-INF/MANIFEST.MF", "com/vaadin/v7/", "com/vaadin/v7/ui/Label.class",
+                        "com/vaadin/v7/ui/Grid$Column.class", "com/vaadin/v7/ui/styles.css", "com/vaadin/ui/Label.class"}) {
+                    out.putNextEntry(new ZipEntry(name));
+                    out.write(new byte[]{1, 2, 3});
+                    out.closeEntry();
+                }
+            }
+            assertEquals(new HashSet<>(Arrays.asList("com/vaadin/v7/ui/Label.class", "com/vaadin/v7/ui/Grid$Column.class")),
+                    JarClassScanner.scan(jar, "com/vaadin/v7", NAME));
+            assertEquals(Collections.emptySet(), JarClassScanner.scan(jar, "org/", NAME));
+        } finally {
+            jar.delete();
+        }
+    }
+
+    @Test
+    public void failsOnNonZipFile() throws Exception {
+        final File file = File.createTempFile("scanner", ".jar");
+        try {
+            assertThrows(IOException.class, () -> JarClassScanner.scan(file, "com/vaadin/v7", NAME));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static Set<String> listWithZipFile(File jar, String prefix) throws IOException {
+        final Set<String> result = new HashSet<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (name.startsWith(prefix) && name.endsWith(".class")) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,83 @@
+package com.vaadin.framework8.migrate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vaadin.framework8.migrate.VaadinClassList.Segment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LazyClassListTest {
+    private static final String SERVER_FILE = "import com.vaadin.ui.Label;\nclass A extends Label {}\n";
+    private static final String CLIENT_FILE = "import com.vaadin.client.ui.VLabel;\nimport com.vaadin.ui.Label;\nclass B {}\n";
+
+    @Test
+    public void referencedSegments() {
+        assertEquals(EnumSet.of(Segment.SERVER), LazyClassList.getReferencedSegments("class A {}"));
+        assertEquals(EnumSet.of(Segment.SERVER), LazyClassList.getReferencedSegments(SERVER_FILE));
+        assertEquals(EnumSet.of(Segment.SERVER, Segment.CLIENT), LazyClassList.getReferencedSegments(CLIENT_FILE));
+        assertEquals(EnumSet.allOf(Segment.class), LazyClassList.getReferencedSegments(
+                "import com.vaadin.shared.ui.label.ContentMode;\nimport com.vaadin.client.*;\n"));
+    }
+
+    @Test
+    public void segmentsAreLoadedOnFirstReference() throws Exception {
+        final Map<Segment, AtomicInteger> loads = new ConcurrentHashMap<>();
+        final LazyClassList classes = new LazyClassList("8.5.2", segment -> {
+            loads.computeIfAbsent(segment, it -> new AtomicInteger()).incrementAndGet();
+            switch (segment) {
+                case SERVER:
+                    return new HashSet<>(Arrays.asList("com.vaadin.v7.ui.Label"));
+                case SHARED:
+                    return new HashSet<>(Arrays.asList("com.vaadin.v7.shared.ui.label.ContentMode"));
+                default:
+                    return new HashSet<>(Arrays.asList("com.vaadin.v7.client.ui.VLabel"));
+            }
+        });
+
+        final MigrationEngine serverEngine = classes.getJavaEngine(SERVER_FILE);
+        assertEquals("import com.vaadin.v7.ui.Label;\nclass A extends Label {}\n", serverEngine.migrateJava(SERVER_FILE));
+        assertSame(serverEngine, classes.getJavaEngine(SERVER_FILE));
+        assertSame(serverEngine, classes.getDeclarativeEngine());
+        assertEquals(EnumSet.of(Segment.SERVER), loads.keySet());
+
+        final MigrationEngine clientEngine = classes.getJavaEngine(CLIENT_FILE);
+        assertEquals("import com.vaadin.v7.client.ui.VLabel;\nimport com.vaadin.v7.ui.Label;\nclass B {}\n",
+                clientEngine.migrateJava(CLIENT_FILE));
+        assertSame(clientEngine, classes.getJavaEngine(SERVER_FILE));
+        assertEquals(EnumSet.of(Segment.SERVER, Segment.CLIENT), loads.keySet());
+        assertFalse(classes.isLoaded(Segment.SHARED));
+
+        assertEquals(3, classes.getClassList().getAllClasses().size());
+        for (AtomicInteger count : loads.values()) {
+            assertEquals(1, count.get());
+        }
+    }
+
+    @Test
+    public void lazyEngineMigratesLikeTheFullClassList() throws Exception {
+        final VaadinClassList classList = VaadinClassListRegistry.get("8.5.2");
+        final MigrationEngine full = new MigrationEngine(classList, "8.5.2");
+        final LazyClassList lazy = new LazyClassList("8.5.2");
+        final List<String> files = Arrays.asList(SERVER_FILE, CLIENT_FILE,
+                "import com.vaadin.shared.ui.grid.Range;\nimport com.vaadin.data.*;\nclass C {}\n",
+                "import com.vaadin.ui.*;\nclass D extends Grid {}\n");
+        for (String file : files) {
+            assertEquals(full.migrateJava(file), lazy.getJavaEngine(file).migrateJava(file));
+        }
+        final Set<String> all = lazy.getClassList().getAllClasses();
+        assertTrue(all.containsAll(classList.getAllClasses()));
+        assertEquals(classList.getAllClasses().size(), all.size());
+    }
+}
@@ -0,0 +1,76 @@
+package com.vaadin.framework8.migrate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class MigrationEngineTest {
+    private static final String LABEL = "package foo;\nimport com.vaadin.ui.Label;\nimport com.vaadin.ui.UI;\n" +
+            "public class MyLabel extends com.vaadin.ui.Label implements com.vaadin.data.Property {}\n";
+    private static final String LABEL_MIGRATED = "package foo;\nimport com.vaadin.v7.ui.Label;\nimport com.vaadin.ui.UI;\n" +
+            "public class MyLabel extends com.vaadin.v7.ui.Label implements com.vaadin.v7.data.Property {}\n";
+
+    private static MigrationEngine engine;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        engine = new MigrationEngine(VaadinClassListRegistry.get("8.5.2"), "8.5.2");
+    }
+
+    @Test
+    public void migrateJava() {
+        assertEquals(LABEL_MIGRATED, engine.migrateJava(LABEL));
+        assertEquals(LABEL_MIGRATED, engine.migrateJava(new StringBuilder(LABEL)));
+        assertEquals("@PropertyId(\"x\")\nimport com.vaadin.annotations.PropertyId;\n",
+                engine.migrateJava("@PropertyId(\"x\")\nimport com.vaadin.data.fieldgroup.PropertyId;\n"));
+        assertEquals("String ws = \"com.vaadin.v7.Vaadin7WidgetSet\";", engine.migrateJava("String ws = \"com.vaadin.DefaultWidgetSet\";"));
+    }
+
+    @Test
+    public void unchangedContentsAreReturnedAsIs() {
+        final String contents = "import com.vaadin.ui.UI;\nclass Foo extends UI {}\n";
+        assertSame(contents, engine.migrateJava(contents));
+        final String html = "<vaadin-button></vaadin-button>";
+        assertSame(html, engine.migrateDeclarative(html));
+    }
+
+    @Test
+    public void migrateDeclarative() {
+        assertEquals("<meta name=\"vaadin-version\" content=\"8.5.2\">\n<vaadin7-label caption=\"x\"></vaadin7-label><vaadin-button/>",
+                engine.migrateDeclarative("<meta name=\"vaadin-version\" content=\"7.7.10\">\n<v-label caption=\"x\"></vaadin-label><vaadin-button/>"));
+    }
+
+    @Test
+    public void migrateByteBuffer() {
+        final ByteBuffer source = ByteBuffer.wrap(LABEL.getBytes(StandardCharsets.ISO_8859_1));
+        final ByteBuffer migrated = engine.migrateJava(source, StandardCharsets.ISO_8859_1);
+        assertEquals(0, source.position());
+        assertEquals(LABEL_MIGRATED, StandardCharsets.ISO_8859_1.decode(migrated).toString());
+    }
+
+    @Test
+    public void concurrentUse() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> results = IntStream.range(0, 1000)
+                    .mapToObj(i -> executor.submit(() -> engine.migrateJava(LABEL)))
+                    .collect(Collectors.toList());
+            for (Future<String> result : results) {
+                assertEquals(LABEL_MIGRATED, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
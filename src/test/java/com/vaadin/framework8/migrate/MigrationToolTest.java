@@ -1,10 +1,46 @@
 package com.vaadin.framework8.migrate;
 
 import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 /**
  * @author mavi
  */
@@ -139,4 +175,529 @@ public class MigrationToolTest {
                 "import com.vaadin.v7.data.validator.EmailValidator;\n" +
                 "public class MySlider extends Slider { private Field field; private EmailValidator emailValidator; }\n");
     }
+
+    @Test
+    public void prefilterSkipsSourcesWithNothingToMigrate() throws Exception {
+        // the import is unused, yet still has to be migrated
+        project.withJavaFile("ImportsLabel.java", "package com.vaadin.random.files;\n" +
+                "import com.vaadin.ui.Label;\n" +
+                "public class ImportsLabel {}\n", Charsets.UTF_8);
+        project.withJavaFile("Plain.java", "package com.vaadin.random.files;\n" +
+                "public class Plain { com.vaadin.random.files.ImportsLabel other; }\n", Charsets.UTF_8);
+        final MigrationResult result = new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).migrate();
+        project.getJavaFile("ImportsLabel.java").assertContents("package com.vaadin.random.files;\n" +
+                "import com.vaadin.v7.ui.Label;\n" +
+                "public class ImportsLabel {}\n");
+        project.getJavaFile("Plain.java").assertNotModified();
+        assertEquals(2, result.getJavaFiles());
+        assertEquals(1, result.getSkippedFiles());
+    }
+
+    @Test
+    public void pomAndWebXmlAreMigrated() throws Exception {
+        project.withFile("pom.xml", "<project>\n  <properties><vaadin.version>7.7.10</vaadin.version></properties>\n</project>\n", Charsets.UTF_8);
+        project.withFile("src/main/webapp/WEB-INF/web.xml", "<web-app><context-param><param-name>widgetset</param-name>" +
+                "<param-value>com.vaadin.DefaultWidgetSet</param-value></context-param></web-app>", Charsets.UTF_8);
+        project.withJavaFile("MyUI.java", "package com.vaadin.random.files;\n" +
+                "@Widgetset(\"com.vaadin.DefaultWidgetSet\")\n" +
+                "public class MyUI {}\n", Charsets.UTF_8);
+        project.migrate();
+        project.getFile("pom.xml").assertContents("<project>\n  <properties><vaadin.version>8.5.2</vaadin.version></properties>\n</project>\n");
+        project.getFile("src/main/webapp/WEB-INF/web.xml").assertContents("<web-app><context-param><param-name>widgetset</param-name>" +
+                "<param-value>com.vaadin.v7.Vaadin7WidgetSet</param-value></context-param></web-app>");
+        project.getJavaFile("MyUI.java").assertContents("package com.vaadin.random.files;\n" +
+                "@Widgetset(\"com.vaadin.v7.Vaadin7WidgetSet\")\n" +
+                "public class MyUI {}\n");
+    }
+
+    @Test
+    public void pomIsWrittenInItsDeclaredEncoding() throws Exception {
+        final String pom = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<project>\n  <name>Caf\u00e9 \u00fcber</name>\n" +
+                "  <properties><vaadin.version>7.7.10</vaadin.version></properties>\n</project>\n";
+        project.withFile("pom.xml", pom, Charsets.ISO_8859_1);
+        project.migrate();
+        project.getFile("pom.xml", Charsets.ISO_8859_1).assertContents(pom.replace("7.7.10", "8.5.2"));
+    }
+
+    @Test
+    public void unchangedPomIsNotOverwritten() throws Exception {
+        project.withFile("pom.xml", "<project>\n  <properties><vaadin.version>8.1.0</vaadin.version></properties>\n</project>\n", Charsets.UTF_8);
+        project.migrate();
+        project.getFile("pom.xml").assertNotModified();
+    }
+
+    @Test
+    public void snapshotCanBeRolledBack() throws Exception {
+        project.close();
+        project = TestProject.fromTemplate();
+        final String original = project.getJavaFile("NewDesign.java").getContents();
+        final String originalTemplate = project.getTemplate("NewDesign.html").getContents();
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setSnapshot(true).migrate();
+        project.getJavaFile("NewDesign.java").assertModified();
+        assertTrue(new File(project.dir, SnapshotJournal.DIRECTORY_NAME).exists());
+
+        // a second run must not migrate the originals kept in the journal
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setSnapshot(true).migrate();
+        SnapshotJournal.rollback(project.dir);
+        project.getJavaFile("NewDesign.java").assertContents(original);
+        project.getJavaFile("NewDesign.java").assertNotModified();
+        project.getTemplate("NewDesign.html").assertContents(originalTemplate);
+        project.getJavaFile("FileWithNoVaadinImport.java").assertNotModified();
+        assertFalse(new File(project.dir, SnapshotJournal.DIRECTORY_NAME).exists());
+    }
+
+    @Test
+    public void shardedMigrationMatchesSingleJvm() throws Exception {
+        project.close();
+        project = TestProject.fromTemplate();
+        final MigrationResult sharded = new ShardedMigration(new MigrationTool("8.5.2", project.dir, Charsets.UTF_8), 3).migrate();
+        project.getJavaFile("NewDesign.java").assertModified();
+        project.getTemplate("NewDesign.html").assertModified();
+        project.getJavaFile("FileWithNoVaadinImport.java").assertNotModified();
+
+        try (TestProject single = TestProject.fromTemplate()) {
+            final MigrationResult expected = new MigrationTool("8.5.2", single.dir, Charsets.UTF_8).migrate();
+            assertEquals(expected.getJavaFiles(), sharded.getJavaFiles());
+            assertEquals(expected.getHtmlFiles(), sharded.getHtmlFiles());
+            assertEquals(expected.getChangedFiles(), sharded.getChangedFiles());
+            assertEquals(single.getJavaFile("NewDesign.java").getContents(), project.getJavaFile("NewDesign.java").getContents());
+        }
+    }
+
+    @Test
+    public void censusCountsUsagesPerModuleAndPackage() throws Exception {
+        project.withFile("pom.xml", "<project/>\n", Charsets.UTF_8);
+        project.withFile("app/pom.xml", "<project/>\n", Charsets.UTF_8);
+        project.withFile("app/src/main/java/com/example/MyLabel.java", "package com.example;\n" +
+                "import com.vaadin.ui.Label;\n" +
+                "import com.vaadin.ui.UI;\n" +
+                "public class MyLabel extends com.vaadin.ui.Label implements com.vaadin.data.Property {}\n", Charsets.UTF_8);
+        project.withFile("app/src/main/resources/com/example/Foo.html",
+                "<vaadin-label></vaadin-label><v-label caption=\"x\"/><vaadin-button></vaadin-button>", Charsets.UTF_8);
+        project.withFile("Root.java", "import com.vaadin.ui.*;\nclass Root { Label l; }\n", Charsets.UTF_8);
+
+        final Map<String, SortedMap<String, SortedMap<String, Integer>>> usages =
+                new Census(new MigrationTool("8.5.2", project.dir, Charsets.UTF_8)).scan().getUsages();
+        final Map<String, Integer> app = usages.get("app").get("com.example");
+        assertEquals(Integer.valueOf(2), app.get("com.vaadin.v7.ui.Label"));
+        assertEquals(Integer.valueOf(1), app.get("com.vaadin.v7.data.Property"));
+        assertEquals(Integer.valueOf(2), app.get("vaadin7-label"));
+        assertFalse(app.containsKey("vaadin7-button"));
+        assertEquals(Integer.valueOf(1), usages.get(".").get("(default)").get("com.vaadin.v7.ui.Label"));
+        project.getFile("app/src/main/java/com/example/MyLabel.java").assertNotModified();
+    }
+
+    @Test
+    public void contentPrefilter() {
+        final ContentPrefilter utf8 = new ContentPrefilter(Charsets.UTF_8);
+        assertTrue(utf8.mayNeedJavaRewrite("import com.vaadin.ui.Label;".getBytes(Charsets.UTF_8)));
+        assertFalse(utf8.mayNeedJavaRewrite("import java.util.List;".getBytes(Charsets.UTF_8)));
+        assertTrue(new ContentPrefilter(Charsets.UTF_16).mayNeedJavaRewrite(new byte[0]));
+        assertFalse(utf8.mayNeedJavaRewrite("package com.vaadin.app;\nclass A { com.vaadin.ui.Label l; }".getBytes(Charsets.UTF_8)));
+        assertTrue(utf8.mayNeedJavaRewrite("import com.vaadin.ui.*;".getBytes(Charsets.UTF_8)));
+        assertTrue(utf8.mayNeedJavaRewrite("@Widgetset(\"com.vaadin.DefaultWidgetSet\")".getBytes(Charsets.UTF_8)));
+        assertTrue(utf8.mayNeedDeclarativeMigration("<v-label/>".getBytes(Charsets.UTF_8)));
+        assertTrue(utf8.mayNeedDeclarativeMigration("<meta name=\"vaadin-version\">".getBytes(Charsets.UTF_8)));
+        assertFalse(utf8.mayNeedDeclarativeMigration("<div>vaadin</div>".getBytes(Charsets.UTF_8)));
+    }
+
+    @Test
+    public void sinceGitRefOnlyMigratesChangedFiles() throws Exception {
+        project.close();
+        project = TestProject.fromTemplate();
+        git("init", "-q");
+        git("add", "-A");
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "initial");
+        project.withJavaFile("Added.java", "import com.vaadin.ui.Label;\nclass Added {}\n", Charsets.UTF_8);
+
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setPaths(ChangedPaths.sinceGitRef(project.dir, "HEAD")).migrate();
+        project.getJavaFile("Added.java").assertModified();
+        project.getJavaFile("NewDesign.java").assertNotModified();
+        project.getTemplate("NewDesign.html").assertNotModified();
+    }
+
+    @Test
+    public void sinceGitRefAfterSnapshotKeepsTheOriginals() throws Exception {
+        project.close();
+        project = TestProject.fromTemplate();
+        git("init", "-q");
+        git("add", "-A");
+        git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "initial");
+        final String original = project.getJavaFile("NewDesign.java").getContents();
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setSnapshot(true).migrate();
+
+        // the snapshot consists of untracked files, hence listed as changed
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setSnapshot(true)
+                .setPaths(ChangedPaths.sinceGitRef(project.dir, "HEAD")).migrate();
+        final String relativePath = project.dir.toPath().relativize(project.getJavaFile("NewDesign.java").file.toPath()).toString();
+        assertEquals(original, FileUtils.readFileToString(new File(project.dir,
+                SnapshotJournal.DIRECTORY_NAME + "/files/" + relativePath), Charsets.UTF_8));
+        SnapshotJournal.rollback(project.dir);
+        project.getJavaFile("NewDesign.java").assertContents(original);
+    }
+
+    @Test
+    public void pathsFromFile() throws Exception {
+        project.close();
+        project = TestProject.fromTemplate();
+        project.withFile("paths.txt", "src/main/java/com/vaadin/random/files/NewDesign.java\n\nsrc/deleted/Foo.java\n", Charsets.UTF_8);
+
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8)
+                .setPaths(ChangedPaths.fromFile(project.dir, new File(project.dir, "paths.txt"))).migrate();
+        project.getJavaFile("NewDesign.java").assertModified();
+        project.getTemplate("NewDesign.html").assertNotModified();
+    }
+
+    private void git(String... args) throws Exception {
+        final List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        assertEquals(0, new ProcessBuilder(command).directory(project.dir).inheritIO().start().waitFor(), command.toString());
+    }
+
+    @Test
+    public void dryRunDiffAppliesToTheSameResult() throws Exception {
+        project.close();
+        project = TestProject.fromTemplate();
+        final StringBuilder longFile = new StringBuilder("import com.vaadin.ui.Label;\r\n");
+        for (int i = 0; i < 20; i++) {
+            longFile.append("// line ").append(i).append("\r\n");
+        }
+        longFile.append("class Long extends com.vaadin.ui.Label implements com.vaadin.data.Property {}");
+        project.withJavaFile("Long.java", longFile.toString(), Charsets.UTF_8);
+        final File patch = File.createTempFile("migration", ".patch");
+        try (TestProject expected = TestProject.fromTemplate()) {
+            expected.withJavaFile("Long.java", longFile.toString(), Charsets.UTF_8);
+            expected.migrate();
+
+            try (OutputStream out = new FileOutputStream(patch)) {
+                new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setDryRun(out).migrate();
+            }
+            project.getJavaFile("NewDesign.java").assertNotModified();
+            project.getJavaFile("Long.java").assertNotModified();
+
+            git("apply", patch.getAbsolutePath());
+            for (String name : new String[]{"NewDesign.java", "OldDesign.java", "Long.java", "LabelModes.java"}) {
+                assertEquals(expected.getJavaFile(name).getContents(), project.getJavaFile(name).getContents(), name);
+            }
+            assertEquals(expected.getTemplate("NewDesign.html").getContents(), project.getTemplate("NewDesign.html").getContents());
+            assertEquals(expected.getFile("pom.xml").getContents(), project.getFile("pom.xml").getContents());
+        } finally {
+            patch.delete();
+        }
+    }
+
+    @Test
+    public void outputStageReplacesFilesAtomicallyKeepingPermissions() throws Exception {
+        final int files = OutputStage.SYNC_BATCH + 10;
+        for (int i = 0; i < files; i++) {
+            project.withJavaFile("Label" + i + ".java", "import com.vaadin.ui.Label;\nclass Label" + i + " {}\n", Charsets.UTF_8);
+        }
+        final Path script = project.getJavaFile("Label0.java").file.toPath();
+        final Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rwxr-x---");
+        Files.setPosixFilePermissions(script, permissions);
+
+        project.migrate();
+        for (int i = 0; i < files; i++) {
+            project.getJavaFile("Label" + i + ".java").assertContents("import com.vaadin.v7.ui.Label;\nclass Label" + i + " {}\n");
+        }
+        assertEquals(permissions, Files.getPosixFilePermissions(script));
+        try (Stream<Path> stream = Files.list(script.getParent())) {
+            assertEquals(files, stream.count(), "temporary files left behind");
+        }
+    }
+
+    @Test
+    public void outputStageCommitsAPartialBatchAfterTheFlushInterval() throws Exception {
+        project.withJavaFile("MyLabel.java", "class MyLabel {}\n", Charsets.UTF_8);
+        final File file = project.getJavaFile("MyLabel.java").file;
+        try (OutputStage output = new OutputStage(null, null, new MigrationStats(project.dir), 1)) {
+            output.submit(file, "class MyLabel { }\n".getBytes(Charsets.UTF_8));
+            final long deadline = System.currentTimeMillis() + 10 * OutputStage.FLUSH_INTERVAL_MILLIS;
+            while (output.getWrittenFiles() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, output.getWrittenFiles(), "the batch was not committed before the stage was closed");
+            project.getJavaFile("MyLabel.java").assertContents("class MyLabel { }\n");
+        }
+    }
+
+    @Test
+    public void resumeDeletesTempFilesOfTheInterruptedRun() throws Exception {
+        project.withJavaFile("MyLabel.java", "import com.vaadin.ui.Label;\nclass MyLabel {}\n", Charsets.UTF_8);
+        final File dir = project.getJavaFile("MyLabel.java").file.getParentFile();
+        final File stray = new File(dir, ".MyLabel.java8342987412.tmp");
+        final File foreign = new File(dir, ".notes.txt123.tmp");
+        Files.write(stray.toPath(), "import com.vaadin.v7.ui.Label;\n".getBytes(Charsets.UTF_8));
+        Files.write(foreign.toPath(), new byte[0]);
+        // the interrupted run had started
+        CheckpointJournal.open(project.dir, false).close();
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setResume(true).migrate();
+        project.getJavaFile("MyLabel.java").assertContents("import com.vaadin.v7.ui.Label;\nclass MyLabel {}\n");
+        assertFalse(stray.exists());
+        assertTrue(foreign.exists(), "only temporary files of migrated files are deleted");
+    }
+
+    @Test
+    public void filesWhichDontRoundTripAreSkipped() throws Exception {
+        final byte[] source = "import com.vaadin.ui.Label;\n// \u0081 \u009d\n".getBytes(Charsets.ISO_8859_1);
+        final File legacy = new File(project.dir, "src/main/java/Legacy.java");
+        Files.createDirectories(legacy.getParentFile().toPath());
+        Files.write(legacy.toPath(), source);
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setCharsetDetection(Charset.forName("windows-1252")).migrate();
+        assertArrayEquals(source, Files.readAllBytes(legacy.toPath()));
+
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setCharsetDetection(Charsets.ISO_8859_1).migrate();
+        assertArrayEquals("import com.vaadin.v7.ui.Label;\n// \u0081 \u009d\n".getBytes(Charsets.ISO_8859_1),
+                Files.readAllBytes(legacy.toPath()));
+    }
+
+    @Test
+    public void charsetDetectionWritesEveryFileInItsOwnCharset() throws Exception {
+        final Charset cp1252 = Charset.forName("windows-1252");
+        final String source = "import com.vaadin.ui.Label;\n// Geschäftspartner €\n";
+        final String migrated = "import com.vaadin.v7.ui.Label;\n// Geschäftspartner €\n";
+        project.withJavaFile("Utf8.java", source, Charsets.UTF_8);
+        project.withJavaFile("Legacy.java", source, cp1252);
+        project.withJavaFile("Utf16.java", "\uFEFF" + source, Charsets.UTF_16LE);
+        project.withJavaFile("Ascii.java", "import com.vaadin.ui.Label;\n", Charsets.UTF_8);
+
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setCharsetDetection(cp1252).migrate();
+        project.getJavaFile("Utf8.java", Charsets.UTF_8).assertContents(migrated);
+        project.getJavaFile("Legacy.java", cp1252).assertContents(migrated);
+        project.getJavaFile("Utf16.java", Charsets.UTF_16LE).assertContents("\uFEFF" + migrated);
+        project.getJavaFile("Ascii.java").assertContents("import com.vaadin.v7.ui.Label;\n");
+    }
+
+    @Test
+    public void resumeSkipsFilesCompletedByTheInterruptedRun() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            project.withJavaFile("Label" + i + ".java", "import com.vaadin.ui.Label;\nclass Label" + i + " {}\n", Charsets.UTF_8);
+        }
+        // the interrupted run completed Label0 and Label1, and died while recording Label2
+        try (CheckpointJournal journal = CheckpointJournal.open(project.dir, false)) {
+            journal.complete(project.getJavaFile("Label0.java").file);
+            journal.complete(project.getJavaFile("Label1.java").file);
+        }
+        final File checkpoint = new File(project.dir, CheckpointJournal.FILE_NAME);
+        final String partialPath = project.dir.toPath().relativize(project.getJavaFile("Label2.java").file.toPath()).toString();
+        Files.write(checkpoint.toPath(), partialPath.substring(0, partialPath.length() - 1).getBytes(Charsets.UTF_8), StandardOpenOption.APPEND);
+
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setResume(true).migrate();
+        project.getJavaFile("Label0.java").assertNotModified();
+        project.getJavaFile("Label1.java").assertNotModified();
+        project.getJavaFile("Label2.java").assertContents("import com.vaadin.v7.ui.Label;\nclass Label2 {}\n");
+        project.getJavaFile("Label3.java").assertContents("import com.vaadin.v7.ui.Label;\nclass Label3 {}\n");
+        assertFalse(checkpoint.exists());
+
+        // without -resume, a stale checkpoint is ignored
+        try (CheckpointJournal journal = CheckpointJournal.open(project.dir, false)) {
+            journal.complete(project.getJavaFile("Label0.java").file);
+        }
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).migrate();
+        project.getJavaFile("Label0.java").assertContents("import com.vaadin.v7.ui.Label;\nclass Label0 {}\n");
+        assertFalse(checkpoint.exists());
+    }
+
+    @Test
+    public void symlinkedFilesAreMigratedOnce() throws Exception {
+        project.withFile("shared/src/Shared.java", "import com.vaadin.ui.Label;\nclass Shared {}\n", Charsets.UTF_8);
+        project.withFile("module-a/pom.xml", "<project/>\n", Charsets.UTF_8);
+        final Path shared = new File(project.dir, "shared/src").toPath();
+        Files.createSymbolicLink(new File(project.dir, "module-a/src").toPath(), shared);
+        Files.createDirectories(new File(project.dir, "module-b").toPath());
+        Files.createSymbolicLink(new File(project.dir, "module-b/src").toPath(), shared);
+        Files.createSymbolicLink(new File(project.dir, "module-b/Linked.java").toPath(), shared.resolve("Shared.java"));
+        // a link to an ancestor directory would make the walk loop forever
+        Files.createSymbolicLink(shared.resolve("loop"), project.dir.toPath());
+
+        final MigrationResult result = new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).migrate();
+        assertEquals(1, result.getJavaFiles());
+        assertEquals(1, result.getChangedFiles());
+        project.getFile("shared/src/Shared.java").assertContents("import com.vaadin.v7.ui.Label;\nclass Shared {}\n");
+        assertTrue(Files.isSymbolicLink(new File(project.dir, "module-b/Linked.java").toPath()));
+    }
+
+    @Test
+    public void linksToFilesOutsideTheProjectAreSkipped() throws Exception {
+        final Path outside = Files.createTempDirectory("outside");
+        try {
+            final Path external = outside.resolve("External.java");
+            Files.write(external, "import com.vaadin.ui.Label;\nclass External {}\n".getBytes(Charsets.UTF_8));
+            project.withFile("src/main/java/Inside.java", "import com.vaadin.ui.Label;\nclass Inside {}\n", Charsets.UTF_8);
+            final Path link = new File(project.dir, "src/main/java/External.java").toPath();
+            Files.createSymbolicLink(link, external);
+
+            final ByteArrayOutputStream patch = new ByteArrayOutputStream();
+            new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setDryRun(patch).migrate();
+            final String diff = new String(patch.toByteArray(), Charsets.UTF_8);
+            assertTrue(diff.contains("a/src/main/java/Inside.java"), diff);
+            assertFalse(diff.contains(".."), diff);
+
+            final ChangeManifest manifest = new ChangeManifest(project.dir);
+            final MigrationResult result = new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setSnapshot(true)
+                    .setChangeManifest(manifest).migrate();
+            assertEquals(1, result.getChangedFiles());
+            assertEquals("import com.vaadin.ui.Label;\nclass External {}\n", new String(Files.readAllBytes(external), Charsets.UTF_8));
+            assertTrue(Files.isSymbolicLink(link));
+            assertEquals(Arrays.asList("src/main/java/Inside.java"), new ArrayList<>(manifest.getChangedFiles().get(".")));
+
+            SnapshotJournal.rollback(project.dir);
+            project.getFile("src/main/java/Inside.java").assertContents("import com.vaadin.ui.Label;\nclass Inside {}\n");
+            try (Stream<Path> stream = Files.list(outside)) {
+                assertEquals(1, stream.count());
+            }
+        } finally {
+            FileUtils.deleteDirectory(outside.toFile());
+        }
+    }
+
+    @Test
+    public void changeManifestGroupsChangedFilesByModule() throws Exception {
+        project.withFile("pom.xml", "<project/>\n", Charsets.UTF_8);
+        project.withFile("web/pom.xml", "<project/>\n", Charsets.UTF_8);
+        project.withFile("web/src/main/java/MyView.java", "import com.vaadin.ui.Label;\nclass MyView {}\n", Charsets.UTF_8);
+        project.withFile("web/src/main/java/Plain.java", "class Plain {}\n", Charsets.UTF_8);
+        project.withFile("web/src/main/resources/MyView.html", "<v-label></v-label>", Charsets.UTF_8);
+        project.withFile("widgets/pom.xml", "<project/>\n", Charsets.UTF_8);
+
+        final ChangeManifest manifest = new ChangeManifest(project.dir);
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setChangeManifest(manifest).migrate();
+        final SortedMap<String, SortedSet<String>> expected = new TreeMap<>();
+        expected.put("web", new TreeSet<>(Arrays.asList("web/src/main/java/MyView.java", "web/src/main/resources/MyView.html")));
+        assertEquals(expected, manifest.getChangedFiles());
+        assertFalse(manifest.isClientChanged());
+        assertTrue(manifest.isDeclarativeChanged());
+
+        final File json = new File(project.dir, "changes.json");
+        manifest.write(json);
+        assertEquals("{\n  \"clientChanged\": false,\n  \"declarativeChanged\": true,\n  \"modules\": {\n" +
+                "    \"web\": [\"web/src/main/java/MyView.java\", \"web/src/main/resources/MyView.html\"]\n  }\n}\n",
+                new String(Files.readAllBytes(json.toPath()), Charsets.UTF_8));
+
+        project.withFile("widgets/src/main/java/MyConnector.java", "import com.vaadin.client.ui.VLabel;\nclass MyConnector {}\n", Charsets.UTF_8);
+        final ChangeManifest clientManifest = new ChangeManifest(project.dir);
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setChangeManifest(clientManifest).migrate();
+        assertEquals(Arrays.asList("widgets"), new ArrayList<>(clientManifest.getChangedFiles().keySet()));
+        assertTrue(clientManifest.isClientChanged());
+        assertFalse(clientManifest.isDeclarativeChanged());
+    }
+
+    @Test
+    public void changeManifestCountsSharedClassesAsClientCode() throws Exception {
+        project.withFile("pom.xml", "<project/>\n", Charsets.UTF_8);
+        project.withFile("src/main/java/MyState.java", "import com.vaadin.shared.ui.label.ContentMode;\n" +
+                "import com.vaadin.ui.Label;\nclass MyState {}\n", Charsets.UTF_8);
+        final ChangeManifest manifest = new ChangeManifest(project.dir);
+        new MigrationTool("8.5.2", project.dir, Charsets.UTF_8).setChangeManifest(manifest).migrate();
+        assertEquals(Arrays.asList("src/main/java/MyState.java"), new ArrayList<>(manifest.getChangedFiles().get(".")));
+        assertTrue(manifest.isClientChanged());
+    }
+
+    @Test
+    public void statisticsArePublishedOverJmx() throws Exception {
+        project.withFile("src/main/java/MyView.java", "import com.vaadin.ui.Label;\nclass MyView {}\n", Charsets.UTF_8);
+        project.withFile("src/main/java/Plain.java", "class Plain {}\n", Charsets.UTF_8);
+        project.withFile("src/main/resources/MyView.html", "<v-label></v-label>", Charsets.UTF_8);
+
+        final MigrationTool tool = new MigrationTool("8.5.2", project.dir, Charsets.UTF_8);
+        tool.migrate();
+        final MigrationStats stats = tool.getStats();
+        assertEquals(3, stats.getFilesDiscovered());
+        assertEquals(3, stats.getFilesQueued());
+        assertEquals(3, stats.getFilesRead());
+        assertEquals(2, stats.getFilesChanged());
+        assertEquals(2, stats.getFilesWritten());
+        assertTrue(stats.getBytesWritten() > 0);
+        assertEquals(0, stats.getReadAheadQueueDepth());
+        assertEquals(0, stats.getWriteQueueDepth());
+        assertEquals("", stats.getSlowestInFlightFile());
+        assertEquals(3, stats.getReadLatencies().values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(13, stats.getWriteLatencies().size());
+        assertEquals(2, stats.getWriteLatencies().values().stream().mapToLong(Long::longValue).sum());
+        // one count per batch; the flush interval may split the two files into two batches
+        final long batches = stats.getCommitLatencies().values().stream().mapToLong(Long::longValue).sum();
+        assertTrue(batches == 1 || batches == 2, "batches: " + batches);
+
+        final ObjectName name = stats.register();
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(2L, server.getAttribute(name, "FilesChanged"));
+            assertEquals(3L, server.getAttribute(name, "FilesRead"));
+        } finally {
+            stats.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void filesAreReadAheadWhileTheClassListLoads() throws Exception {
+        project.withJavaFile("MyLabel.java", "import com.vaadin.ui.Label;\nclass MyLabel extends Label {}\n", Charsets.UTF_8);
+        project.withJavaFile("Plain.java", "class Plain {}\n", Charsets.UTF_8);
+        project.withTemplate("MyDesign.html", "<v-label></v-label>");
+        final AtomicLong readWhileLoading = new AtomicLong();
+        final AtomicLong queuedWhileLoading = new AtomicLong();
+        final AtomicReference<MigrationStats> stats = new AtomicReference<>();
+        final MigrationTool tool = new MigrationTool(new LazyClassList("8.5.2", loadWhenBlocked(Thread.currentThread(), () -> {
+            readWhileLoading.set(stats.get().getFilesRead());
+            queuedWhileLoading.set(stats.get().getReadAheadQueueDepth());
+        })), "8.5.2", project.dir, Charsets.UTF_8);
+        stats.set(tool.getStats());
+        tool.migrate();
+        // every file was read before the class list arrived; the plain one was dropped right away, the first of the other
+        // two is the one waiting for the class list
+        assertEquals(3, readWhileLoading.get());
+        assertEquals(1, queuedWhileLoading.get());
+        assertEquals(0, tool.getStats().getReadAheadQueueDepth());
+        project.getJavaFile("MyLabel.java").assertContents("import com.vaadin.v7.ui.Label;\nclass MyLabel extends Label {}\n");
+        project.getJavaFile("Plain.java").assertNotModified();
+        project.getTemplate("MyDesign.html").assertContents("<vaadin7-label></vaadin7-label>");
+    }
+
+    @Test
+    public void readAheadStopsAtTheLimit() throws Exception {
+        project.withJavaFile("A.java", "import com.vaadin.ui.Label;\nclass A extends Label {}\n", Charsets.UTF_8);
+        project.withJavaFile("B.java", "import com.vaadin.ui.Label;\nclass B extends Label {}\n", Charsets.UTF_8);
+        project.withJavaFile("C.java", "import com.vaadin.ui.Label;\nclass C extends Label {}\n", Charsets.UTF_8);
+        final AtomicLong readWhileLoading = new AtomicLong();
+        final AtomicReference<MigrationStats> stats = new AtomicReference<>();
+        final MigrationTool tool = new MigrationTool(new LazyClassList("8.5.2", loadWhenBlocked(Thread.currentThread(),
+                () -> readWhileLoading.set(stats.get().getFilesRead()))), "8.5.2", project.dir, Charsets.UTF_8)
+                .setReadAheadLimit(1);
+        stats.set(tool.getStats());
+        tool.migrate();
+        assertEquals(1, readWhileLoading.get());
+        assertEquals(3, tool.getStats().getFilesChanged());
+    }
+
+    @Test
+    public void classListFailureReachesTheCaller() throws Exception {
+        project.withJavaFile("MyLabel.java", "import com.vaadin.ui.Label;\nclass MyLabel extends Label {}\n", Charsets.UTF_8);
+        final MigrationTool tool = new MigrationTool(new LazyClassList("8.5.2", segment -> {
+            throw new IOException("Vaadin 8.5.2 not found");
+        }), "8.5.2", project.dir, Charsets.UTF_8);
+        final IOException ex = assertThrows(IOException.class, tool::migrate);
+        assertEquals("Vaadin 8.5.2 not found", ex.getMessage());
+        project.getJavaFile("MyLabel.java").assertNotModified();
+    }
+
+    /**
+     * Loads the class list of 8.5.2, but only once given thread waits for the server classes; then runs given task,
+     * which sees what the thread did before it had to wait.
+     */
+    private static LazyClassList.SegmentLoader loadWhenBlocked(Thread migrating, Runnable whileBlocked) {
+        return segment -> {
+            if (segment == VaadinClassList.Segment.SERVER) {
+                final long deadline = System.currentTimeMillis() + 10000;
+                while (migrating.getState() != Thread.State.WAITING) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IOException("The migration never waited for the class list");
+                    }
+                    LockSupport.parkNanos(1000000);
+                }
+                whileBlocked.run();
+            }
+            return VaadinClassListRegistry.getSegment(segment, "8.5.2");
+        };
+    }
 }
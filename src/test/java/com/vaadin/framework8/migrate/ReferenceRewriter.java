@@ -0,0 +1,100 @@
+package com.vaadin.framework8.migrate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The original, straightforward rewrite algorithm: one {@link String#replace(CharSequence, CharSequence)} pass per
+ * migrated class. It is slow but obviously correct, and serves as the reference any faster rewrite engine must match
+ * byte-for-byte. See {@link RewriteDifferentialTest}.
+ * <p>
+ * Do not optimize this class.
+ */
+public class ReferenceRewriter {
+    private final VaadinClassList classList;
+    private final Map<String, String> specialRenames;
+
+    public ReferenceRewriter(VaadinClassList classList, Map<String, String> specialRenames) {
+        this.classList = Objects.requireNonNull(classList);
+        this.specialRenames = new LinkedHashMap<>(specialRenames);
+    }
+
+    public String modifyJava(String contents) {
+        final JavaFile javaFile = new JavaFile(contents);
+
+        // pre-process: expand star imports
+        for (String vaadinStarImport : javaFile.getVaadinStarImports()) {
+            final String v7StarImport = vaadinStarImport.replace("com.vaadin.",
+                    "com.vaadin.v7.");
+            for (String matchingClass : classList.getClassesMatchingStarImport(v7StarImport)) {
+                if (javaFile.getContents().contains(VaadinClassList.getSimpleName(matchingClass))) {
+                    javaFile.addImportAbove(vaadinStarImport, matchingClass);
+                }
+            }
+            javaFile.removeImport(vaadinStarImport);
+        }
+
+        // replace imports and everything else inside of the file with com.vaadin.v7. counterpart.
+        for (String v7Class : classList.getAllClasses()) {
+            String comvaadinClass = v7Class.replace("com.vaadin.v7.",
+                    "com.vaadin.");
+            javaFile.performReplacement(comvaadinClass, v7Class);
+        }
+
+        for (Map.Entry<String, String> rename : specialRenames.entrySet()) {
+            javaFile.performReplacement(rename.getKey(), rename.getValue());
+        }
+
+        return javaFile.getContents();
+    }
+
+    public String modifyDeclarative(String htmlFile, String version) {
+        for (String v7Class : classList.serverV7UIClasses) {
+            String simpleClassName = VaadinClassList.getSimpleName(v7Class);
+            String tagName = classNameToElementName(simpleClassName);
+
+            String legacyStartTag = "<v-" + tagName + ">";
+            String legacyStartTag2 = "<v-" + tagName + " ";
+            String startTag = "<vaadin-" + tagName + ">";
+            String startTag2 = "<vaadin-" + tagName + " ";
+            String newStartTag = "<vaadin7-" + tagName + ">";
+            String newStartTag2 = "<vaadin7-" + tagName + " ";
+            String legacyEndTag = "</v-" + tagName + ">";
+            String endTag = "</vaadin-" + tagName + ">";
+            String newEndTag = "</vaadin7-" + tagName + ">";
+
+            htmlFile = htmlFile.replace(legacyStartTag, newStartTag);
+            htmlFile = htmlFile.replace(startTag, newStartTag);
+            htmlFile = htmlFile.replace(legacyStartTag2, newStartTag2);
+            htmlFile = htmlFile.replace(startTag2, newStartTag2);
+
+            htmlFile = htmlFile.replace(legacyEndTag, newEndTag);
+            htmlFile = htmlFile.replace(endTag, newEndTag);
+
+            // Version
+            htmlFile = htmlFile.replaceAll(
+                    "<meta(.*)name=\"vaadin-version\"(.*)content=\"7.*\"(.*)>",
+                    "<meta name=\"vaadin-version\" content=\"" + version
+                            + "\">");
+        }
+
+        return htmlFile;
+    }
+
+    static String classNameToElementName(String className) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < className.length(); i++) {
+            char c = className.charAt(i);
+            if (Character.isUpperCase(c)) {
+                if (i > 0) {
+                    result.append("-");
+                }
+                result.append(Character.toLowerCase(c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
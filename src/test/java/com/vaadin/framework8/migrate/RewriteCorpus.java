@@ -0,0 +1,218 @@
+package com.vaadin.framework8.migrate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Generates a reproducible corpus of Java and declarative files for {@link RewriteDifferentialTest}. The files are not
+ * meant to compile; they mix realistic code with the corner cases a rewrite engine is likely to get wrong: near-miss
+ * class names, missing separators, star imports, CRLF line endings, keywords glued to other words, legacy {@code <v-}
+ * tags and {@code vaadin-version} meta tags.
+ */
+public class RewriteCorpus {
+    private final Random random;
+    private final List<String> migratedClasses;
+    private final List<String> otherClasses;
+    private final List<String> starImports;
+    private final List<String> tagNames;
+
+    public RewriteCorpus(long seed, VaadinClassList classList, Iterable<String> specialRenames) {
+        this.random = new Random(seed);
+        migratedClasses = new ArrayList<>();
+        for (String v7Class : classList.getAllClasses()) {
+            migratedClasses.add(v7Class.replace("com.vaadin.v7.", "com.vaadin."));
+        }
+        // sort so that the seed alone determines the corpus, regardless of the hash set iteration order
+        migratedClasses.sort(null);
+        for (String special : specialRenames) {
+            migratedClasses.add(special);
+        }
+        otherClasses = new ArrayList<>();
+        otherClasses.add("com.vaadin.ui.UI");
+        otherClasses.add("com.vaadin.ui.Button");
+        otherClasses.add("com.vaadin.server.VaadinRequest");
+        otherClasses.add("com.vaadin.annotations.Theme");
+        otherClasses.add("java.util.List");
+        otherClasses.add("com.vaadin.v7.ui.Label");
+        starImports = new ArrayList<>();
+        for (String pkg : new String[]{"ui", "data", "data.util", "data.validator", "ui.renderers", "shared.ui", "client.ui", "server", "event"}) {
+            starImports.add("com.vaadin." + pkg + ".*");
+        }
+        tagNames = new ArrayList<>();
+        for (String uiClass : classList.serverV7UIClasses) {
+            tagNames.add(ReferenceRewriter.classNameToElementName(VaadinClassList.getSimpleName(uiClass)));
+        }
+        tagNames.sort(null);
+        tagNames.add("button");
+        tagNames.add("vertical-layout");
+        tagNames.add("text-field-x");
+    }
+
+    private <T> T pick(List<T> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+
+    private String pickClass() {
+        final int dice = random.nextInt(10);
+        if (dice < 6) {
+            return pick(migratedClasses);
+        }
+        if (dice < 8) {
+            return pick(otherClasses);
+        }
+        // a near miss: a prefix or an extension of a migrated class name
+        final String name = pick(migratedClasses);
+        return random.nextBoolean() ? name.substring(0, name.length() - 1) : name + "Ex";
+    }
+
+    public String nextJavaFile() {
+        final String nl = random.nextInt(8) == 0 ? "\r\n" : "\n";
+        final StringBuilder sb = new StringBuilder();
+        sb.append("package com.example.p").append(random.nextInt(100)).append(';').append(nl).append(nl);
+        final int imports = random.nextInt(12);
+        for (int i = 0; i < imports; i++) {
+            final int dice = random.nextInt(20);
+            if (dice == 0) {
+                sb.append("import ").append(pick(starImports)).append(';').append(nl);
+            } else if (dice == 1) {
+                sb.append("import static ").append(pickClass()).append(".FOO;").append(nl);
+            } else if (dice == 2) {
+                sb.append("import ").append(pickClass()).append(" ;").append(nl);
+            } else if (dice == 3) {
+                sb.append("import ").append(pickClass()).append(';');
+            } else {
+                sb.append("import ").append(pickClass()).append(';').append(nl);
+            }
+        }
+        sb.append(nl).append("public class C").append(random.nextInt(1000));
+        if (random.nextBoolean()) {
+            sb.append(" extends ").append(pickClass()).append(random.nextInt(4) == 0 ? "{" : " {");
+        } else {
+            sb.append(" implements ").append(pickClass()).append(", ").append(pickClass()).append(" {");
+        }
+        sb.append(nl);
+        final int members = random.nextInt(10);
+        for (int i = 0; i < members; i++) {
+            final String simpleName = VaadinClassList.getSimpleName(pickClass());
+            switch (random.nextInt(7)) {
+                case 0:
+                    sb.append("    private ").append(simpleName).append(" field").append(i).append(';').append(nl);
+                    break;
+                case 1:
+                    sb.append("    void m").append(i).append("() throws ").append(pickClass()).append(" {}").append(nl);
+                    break;
+                case 2:
+                    sb.append("    class Inner").append(i).append(" extends ").append(pickClass()).append(" implements ")
+                            .append(pickClass()).append(" {}").append(nl);
+                    break;
+                case 3:
+                    sb.append("    // reimport ").append(pickClass()).append(";extends ").append(pickClass()).append(" ").append(nl);
+                    break;
+                case 4:
+                    sb.append("    String s").append(i).append(" = \"import ").append(pickClass()).append(";\";").append(nl);
+                    break;
+                case 5:
+                    sb.append("    @com.vaadin.data.fieldgroup.PropertyId(\"x\") ").append(simpleName).append(" p").append(i).append(';').append(nl);
+                    break;
+                default:
+                    sb.append("    ").append(randomNoise()).append(nl);
+            }
+        }
+        sb.append('}').append(nl);
+        return sb.toString();
+    }
+
+    public String nextDeclarativeFile() {
+        final String nl = random.nextInt(8) == 0 ? "\r\n" : "\n";
+        final StringBuilder sb = new StringBuilder();
+        sb.append("<!doctype html>").append(nl).append("<html>").append(nl).append(" <head>").append(nl);
+        switch (random.nextInt(4)) {
+            case 0:
+                sb.append("  <meta charset=\"UTF-8\" name=\"vaadin-version\" content=\"7.7.").append(random.nextInt(20)).append("\">").append(nl);
+                break;
+            case 1:
+                sb.append("  <meta name=\"vaadin-version\" content=\"8.1.0\">").append(nl);
+                break;
+            case 2:
+                sb.append("  <meta name=\"vaadin-version\" content=\"7.6.0\"><vaadin-").append(pick(tagNames)).append("> <x>").append(nl);
+                break;
+            default:
+        }
+        sb.append(" </head>").append(nl).append(" <body>").append(nl);
+        final List<String> open = new ArrayList<>();
+        final int elements = random.nextInt(25);
+        for (int i = 0; i < elements; i++) {
+            if (!open.isEmpty() && random.nextInt(3) == 0) {
+                sb.append("</").append(open.remove(open.size() - 1)).append('>').append(nl);
+                continue;
+            }
+            final String prefix = random.nextInt(4) == 0 ? "v-" : random.nextInt(10) == 0 ? "vaadin7-" : "vaadin-";
+            final String tag = prefix + pick(tagNames);
+            switch (random.nextInt(5)) {
+                case 0:
+                    sb.append('<').append(tag).append('>');
+                    open.add(tag);
+                    break;
+                case 1:
+                    sb.append('<').append(tag).append(" _id=\"f").append(i).append("\" width-full>");
+                    open.add(tag);
+                    break;
+                case 2:
+                    sb.append('<').append(tag).append("/>");
+                    break;
+                case 3:
+                    sb.append('<').append(tag).append(nl).append("   caption=\"x\">").append("</").append(tag).append(" >");
+                    break;
+                default:
+                    sb.append(randomNoise());
+            }
+            sb.append(nl);
+        }
+        while (!open.isEmpty()) {
+            sb.append("</").append(open.remove(open.size() - 1)).append('>').append(nl);
+        }
+        sb.append(" </body>").append(nl).append("</html>").append(nl);
+        return sb.toString();
+    }
+
+    private String randomNoise() {
+        final String alphabet = "abcXYZ<>/ ;.-_\"=\t0123456789éü€";
+        final StringBuilder sb = new StringBuilder();
+        final int length = random.nextInt(60);
+        for (int i = 0; i < length; i++) {
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A named corpus file.
+     */
+    public static class Sample {
+        public final String name;
+        public final String contents;
+
+        public Sample(String name, String contents) {
+            this.name = Objects.requireNonNull(name);
+            this.contents = Objects.requireNonNull(contents);
+        }
+    }
+
+    public List<Sample> javaFiles(int count) {
+        final List<Sample> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Sample("java#" + i, nextJavaFile()));
+        }
+        return result;
+    }
+
+    public List<Sample> declarativeFiles(int count) {
+        final List<Sample> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Sample("html#" + i, nextDeclarativeFile()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+package com.vaadin.framework8.migrate;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Differential test of the production rewrite engine against {@link ReferenceRewriter}, the original
+ * {@code String.replace} loop. Every file of a seeded {@link RewriteCorpus} is rewritten by both; the first file
+ * with a different outcome fails the test with a minimal diff. The throughput ratio of the two engines is printed.
+ * <p>
+ * Use {@code -Ddifferential.seed=...} and {@code -Ddifferential.corpusSize=...} to run a larger or a different corpus,
+ * e.g. {@code ./mvnw test -Dtest=RewriteDifferentialTest -Ddifferential.corpusSize=100000}.
+ */
+public class RewriteDifferentialTest {
+    private static final long SEED = Long.getLong("differential.seed", 8_5_2L);
+    private static final int CORPUS_SIZE = Integer.getInteger("differential.corpusSize", 400);
+    private static final String VERSION = "8.5.2";
+
+    private static MigrationEngine engine;
+    private static ReferenceRewriter reference;
+    private static RewriteCorpus corpus;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        final VaadinClassList classList = VaadinClassListRegistry.get(VERSION);
+        engine = new MigrationEngine(classList, VERSION);
+        reference = new ReferenceRewriter(classList, engine.getSpecialRenames());
+        corpus = new RewriteCorpus(SEED, classList, engine.getSpecialRenames().keySet());
+    }
+
+    @Test
+    public void javaRewriteMatchesReference() {
+        compare("Java", corpus.javaFiles(CORPUS_SIZE), reference::modifyJava, engine::rewriteClassReferences);
+    }
+
+    @Test
+    public void declarativeRewriteMatchesReference() {
+        compare("declarative", corpus.declarativeFiles(CORPUS_SIZE),
+                html -> reference.modifyDeclarative(html, VERSION), engine::migrateDeclarative);
+    }
+
+    @Test
+    public void testProjectFilesMatchReference() throws IOException {
+        final List<RewriteCorpus.Sample> java = new ArrayList<>();
+        final List<RewriteCorpus.Sample> html = new ArrayList<>();
+        for (File file : FileUtils.listFiles(new File("test-projects"), new String[]{"java", "html"}, true)) {
+            final RewriteCorpus.Sample sample = new RewriteCorpus.Sample(file.getPath(), FileUtils.readFileToString(file, Charsets.UTF_8));
+            (file.getName().endsWith(".java") ? java : html).add(sample);
+        }
+        compare("test-projects Java", java, reference::modifyJava, engine::rewriteClassReferences);
+        compare("test-projects declarative", html,
+                it -> reference.modifyDeclarative(it, VERSION), engine::migrateDeclarative);
+    }
+
+    private static void compare(String kind, List<RewriteCorpus.Sample> samples, UnaryOperator<String> referenceEngine,
+                                UnaryOperator<String> productionEngine) {
+        // warm up both engines so that the throughput isn't dominated by the JIT
+        for (int i = 0; i < Math.min(samples.size(), 50); i++) {
+            referenceEngine.apply(samples.get(i).contents);
+            productionEngine.apply(samples.get(i).contents);
+        }
+        long referenceNanos = 0;
+        long productionNanos = 0;
+        long chars = 0;
+        int changed = 0;
+        for (RewriteCorpus.Sample sample : samples) {
+            final long start = System.nanoTime();
+            final String expected = referenceEngine.apply(sample.contents);
+            final long middle = System.nanoTime();
+            final String actual = productionEngine.apply(sample.contents);
+            productionNanos += System.nanoTime() - middle;
+            referenceNanos += middle - start;
+            chars += sample.contents.length();
+            if (!expected.equals(actual)) {
+                fail(kind + " file " + sample.name + " (seed " + SEED + ") differs from the reference:\n"
+                        + minimalDiff(expected, actual) + "\nOriginal file:\n" + sample.contents);
+            }
+            if (!expected.equals(sample.contents)) {
+                changed++;
+            }
+        }
+        System.out.println(String.format("%s: %d files (%d changed), %d chars; reference %.1f ms, production %.1f ms, speedup %.2fx",
+                kind, samples.size(), changed, chars, referenceNanos / 1e6, productionNanos / 1e6,
+                productionNanos == 0 ? Double.NaN : (double) referenceNanos / productionNanos));
+    }
+
+    /**
+     * Strips the common prefix and suffix and shows the remaining region, extended to whole lines, in the unified diff style.
+     */
+    static String minimalDiff(String expected, String actual) {
+        int prefix = 0;
+        final int maxPrefix = Math.min(expected.length(), actual.length());
+        while (prefix < maxPrefix && expected.charAt(prefix) == actual.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxPrefix - prefix
+                && expected.charAt(expected.length() - 1 - suffix) == actual.charAt(actual.length() - 1 - suffix)) {
+            suffix++;
+        }
+        final int lineStart = expected.lastIndexOf('\n', prefix - 1) + 1;
+        int line = 1;
+        for (int i = 0; i < lineStart; i++) {
+            if (expected.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        final StringBuilder sb = new StringBuilder("@@ line ").append(line).append(" @@\n");
+        appendLines(sb, '-', expected, lineStart, expected.length() - suffix);
+        appendLines(sb, '+', actual, lineStart, actual.length() - suffix);
+        return sb.toString();
+    }
+
+    private static void appendLines(StringBuilder sb, char marker, String text, int from, int to) {
+        int lineEnd = text.indexOf('\n', Math.max(from, to - 1));
+        if (lineEnd < 0) {
+            lineEnd = text.length();
+        }
+        for (String line : text.substring(from, lineEnd).split("\n", -1)) {
+            sb.append(marker).append(line).append('\n');
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.vaadin.framework8.migrate;
+
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures the time from launching {@link Migrate#main(String[])} in a new JVM until the first file has been migrated,
+ * on a fresh copy of {@code test-projects/random-files}. For small projects this is most of the wall time: it's
+ * dominated by loading the classes of the tool and its dependencies.
+ * <p>
+ * The tool is launched from the test classpath and, after {@code ./mvnw package}, from the runnable jar; when the
+ * {@code appcds} profile has built the class data sharing archive next to the jar, also with the archive. The median of
+ * {@code -Dstartup.runs=...} runs (5 by default) is printed for each. Not part of the default test run, use e.g.
+ * {@code ./mvnw -Pappcds package && ./mvnw test -Dtest=StartupBenchmark}.
+ */
+public class StartupBenchmark {
+    private static final int RUNS = Integer.getInteger("startup.runs", 5);
+    private static final Pattern TIME_TO_FIRST_FILE = Pattern.compile("Time to first file: (\\d+) ms");
+
+    @Test
+    public void timeToFirstFile() throws Exception {
+        final String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath();
+        measure("classpath", Arrays.asList(java, "-cp", System.getProperty("java.class.path"), Migrate.class.getName()));
+
+        final File jar = findRunnableJar();
+        if (jar != null) {
+            measure("jar", Arrays.asList(java, "-jar", jar.getAbsolutePath()));
+            final File archive = new File(jar.getParentFile(), jar.getName().replaceFirst("\\.jar$", ".jsa"));
+            if (archive.exists()) {
+                measure("jar + AppCDS", Arrays.asList(java, "-XX:SharedArchiveFile=" + archive.getAbsolutePath(),
+                        "-jar", jar.getAbsolutePath()));
+            }
+        }
+    }
+
+    /**
+     * The jar built by {@code ./mvnw package}, or null if there is none.
+     */
+    private static File findRunnableJar() {
+        final File[] jars = new File("target").listFiles((dir, name) -> name.startsWith("framework8-migration-tool-") && name.endsWith(".jar"));
+        return jars == null || jars.length == 0 ? null : jars[0];
+    }
+
+    private static void measure(String name, List<String> command) throws Exception {
+        final List<Long> timesToFirstFile = new ArrayList<>();
+        final List<Long> wallTimes = new ArrayList<>();
+        for (int i = 0; i < RUNS; i++) {
+            final File project = Files.createTempDirectory("startup-benchmark").toFile();
+            try {
+                FileUtils.copyDirectory(new File("test-projects/random-files"), project);
+                final List<String> launch = new ArrayList<>(command);
+                final long launchedAt = System.currentTimeMillis();
+                launch.add(1, "-D" + MigrationTool.LAUNCHED_AT_PROPERTY + "=" + launchedAt);
+                final Process process = new ProcessBuilder(launch).directory(project).redirectErrorStream(true).start();
+                final String output = IOUtils.toString(process.getInputStream(), Charsets.UTF_8);
+                assertEquals(0, process.waitFor(), output);
+                wallTimes.add(System.currentTimeMillis() - launchedAt);
+                final Matcher matcher = TIME_TO_FIRST_FILE.matcher(output);
+                assertTrue(matcher.find(), "The time to first file was not reported:\n" + output);
+                timesToFirstFile.add(Long.parseLong(matcher.group(1)));
+            } finally {
+                FileUtils.deleteDirectory(project);
+            }
+        }
+        System.out.println("Startup " + name + ": time to first file " + median(timesToFirstFile)
+                + " ms, wall time " + median(wallTimes) + " ms (median of " + RUNS + " runs)");
+    }
+
+    private static long median(List<Long> values) {
+        final List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+}
@@ -0,0 +1,46 @@
+package com.vaadin.framework8.migrate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.vaadin.framework8.migrate.VaadinClassList.Segment;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VaadinClassListRegistryTest {
+    @Test
+    public void concurrentRequestsShareOneLoad() throws Exception {
+        VaadinClassListRegistry.clear();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Set<String>>> futures = IntStream.range(0, 16)
+                    .mapToObj(i -> executor.submit(() -> VaadinClassListRegistry.getSegment(Segment.SERVER, "8.5.2")))
+                    .collect(Collectors.toList());
+            final Set<String> first = futures.get(0).get();
+            for (Future<Set<String>> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void classListIsSharedReadOnly() throws Exception {
+        final VaadinClassList classList = VaadinClassListRegistry.get("8.5.2");
+        assertSame(classList, VaadinClassListRegistry.get("8.5.2"));
+        assertTrue(classList.serverV7UIClasses.contains("com.vaadin.v7.ui.Label"));
+        assertThrows(UnsupportedOperationException.class, () -> classList.serverV7Classes.add("com.vaadin.v7.ui.Foo"));
+        assertThrows(UnsupportedOperationException.class,
+                () -> VaadinClassListRegistry.getSegment(Segment.CLIENT, "8.5.2").clear());
+    }
+}